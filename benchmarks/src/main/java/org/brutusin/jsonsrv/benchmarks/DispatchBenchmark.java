@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.brutusin.jsonsrv.JsonServlet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the steady-state cost of the request dispatch path for a trivial
+ * action (no input, constant output). Meant to be run with
+ * <code>-prof gc</code>: <code>gc.alloc.rate.norm</code> should stay close to
+ * the allocations of the mock request and response themselves, reported by
+ * the <code>baseline</code> benchmark.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private JsonServlet servlet;
+    private ServletMocks.MockResponse response;
+    private HttpServletRequest trivial;
+    private HttpServletRequest schema;
+
+    @Setup
+    public void setup() throws Exception {
+        Map<String, String> initParams = new HashMap<String, String>();
+        // metrics and compression would add their own (constant) allocations
+        initParams.put(JsonServlet.INIT_PARAM_DISABLE_METRICS, "true");
+        initParams.put(JsonServlet.INIT_PARAM_COMPRESSION_THRESHOLD, "-1");
+        servlet = new JsonServlet();
+        servlet.init(ServletMocks.createConfig(initParams));
+        response = ServletMocks.createResponse();
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(JsonServlet.PARAM_ID, "trivial");
+        trivial = ServletMocks.createRequest("GET", params, Collections.<String, String>emptyMap());
+        params = new HashMap<String, String>(params);
+        params.put(JsonServlet.PARAM_SCHEMA, "i");
+        schema = ServletMocks.createRequest("GET", params, Collections.<String, String>emptyMap());
+    }
+
+    @TearDown
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    /**
+     * Mock interactions performed by the servlet in the trivial case, without
+     * the servlet.
+     */
+    @Benchmark
+    public int baseline() throws Exception {
+        response.reset();
+        HttpServletResponse resp = response.getResponse();
+        trivial.getMethod();
+        trivial.getHeader("If-None-Match");
+        trivial.getParameter(JsonServlet.PARAM_BATCH);
+        trivial.getParameter(JsonServlet.PARAM_ID);
+        trivial.getParameter(JsonServlet.PARAM_SCHEMA);
+        trivial.getParameter(JsonServlet.PARAM_INPUT);
+        trivial.getContentType();
+        trivial.isAsyncSupported();
+        resp.addHeader("X-Powered-By", "jsonsrv");
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.addDateHeader("Expires", 0);
+        resp.addHeader("Cache-Control", "max-age=0, no-cache, no-store");
+        resp.addHeader("Pragma", "no-cache");
+        resp.addHeader("Vary", "Accept");
+        trivial.getHeader("Accept");
+        resp.getOutputStream().write(new byte[0]);
+        return response.getStatus();
+    }
+
+    @Benchmark
+    public int trivialAction() throws Exception {
+        response.reset();
+        servlet.service(trivial, response.getResponse());
+        return response.getStatus();
+    }
+
+    @Benchmark
+    public int inputSchema() throws Exception {
+        response.reset();
+        servlet.service(schema, response.getResponse());
+        return response.getStatus();
+    }
+}
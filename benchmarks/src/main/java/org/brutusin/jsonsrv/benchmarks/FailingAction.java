@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.benchmarks;
+
+import org.brutusin.jsonsrv.SafeAction;
+
+/**
+ * Always fails with an application error.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class FailingAction extends SafeAction<Payload, Payload> {
+
+    private static final Exception ERROR = new Exception("Application error");
+
+    @Override
+    public Payload execute(Payload input) throws Exception {
+        throw ERROR;
+    }
+}
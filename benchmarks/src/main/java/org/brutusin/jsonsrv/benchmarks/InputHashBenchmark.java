@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.benchmarks;
+
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
+import org.brutusin.jsonsrv.binding.TypeBinding;
+import org.brutusin.jsonsrv.utils.CanonicalHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the canonical hash of the tree of a bound input, walked through its
+ * type binding (cache key of the framework), with the canonical hash of the
+ * parsed input, hashing the raw JSON text, and the serialization of the bound
+ * input formerly used as key.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputHashBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int size;
+
+    private String json;
+    private JsonNode node;
+    private Payload payload;
+    private TypeBinding binding;
+    private MessageDigest md5;
+
+    @Setup
+    public void setup() throws Exception {
+        json = Payload.createJson(size);
+        node = JsonCodec.getInstance().parse(json);
+        payload = JsonCodec.getInstance().load(node, Payload.class);
+        binding = TypeBinding.create(Payload.class);
+        md5 = MessageDigest.getInstance("MD5");
+    }
+
+    @Benchmark
+    public long[] bound() throws Exception {
+        return CanonicalHash.hash(binding.toNode(payload));
+    }
+
+    @Benchmark
+    public long[] canonical() {
+        return CanonicalHash.hash(node);
+    }
+
+    @Benchmark
+    public byte[] rawString() throws Exception {
+        return md5.digest(json.getBytes("UTF-8"));
+    }
+
+    @Benchmark
+    public String transform() {
+        return JsonCodec.getInstance().transform(payload);
+    }
+}
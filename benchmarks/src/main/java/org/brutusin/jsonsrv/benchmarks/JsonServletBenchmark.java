@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import org.brutusin.jsonsrv.JsonServlet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead of the <code>JsonServlet</code> request pipeline for
+ * the main request types. Run with <code>-prof gc</code> to get allocation
+ * rates.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonServletBenchmark {
+
+    private static final int LARGE_PAYLOAD_SIZE = 1000;
+
+    private JsonServlet servlet;
+    private ServletMocks.MockResponse response;
+
+    private HttpServletRequest listing;
+    private HttpServletRequest inputSchema;
+    private HttpServletRequest outputSchema;
+    private HttpServletRequest smallInput;
+    private HttpServletRequest largeInput;
+    private HttpServletRequest notModified;
+    private HttpServletRequest modified;
+    private HttpServletRequest serviceNotFound;
+    private HttpServletRequest parseError;
+    private HttpServletRequest invalidInput;
+    private HttpServletRequest applicationError;
+
+    @Setup
+    public void setup() throws Exception {
+        servlet = new JsonServlet();
+        servlet.init(ServletMocks.createConfig(getInitParams()));
+        response = ServletMocks.createResponse();
+
+        String small = Payload.createJson(1);
+        String large = Payload.createJson(LARGE_PAYLOAD_SIZE);
+        listing = get(params());
+        inputSchema = get(params(JsonServlet.PARAM_ID, "echo", JsonServlet.PARAM_SCHEMA, "i"));
+        outputSchema = get(params(JsonServlet.PARAM_ID, "echo", JsonServlet.PARAM_SCHEMA, "o"));
+        smallInput = get(params(JsonServlet.PARAM_ID, "echo", JsonServlet.PARAM_INPUT, small));
+        largeInput = get(params(JsonServlet.PARAM_ID, "echo", JsonServlet.PARAM_INPUT, large));
+        notModified = ServletMocks.createRequest("GET", params(JsonServlet.PARAM_ID, "conditional", JsonServlet.PARAM_INPUT, small), params("If-None-Match", "W/\"" + ConditionalAction.ETAG + "\""));
+        modified = ServletMocks.createRequest("GET", params(JsonServlet.PARAM_ID, "conditional", JsonServlet.PARAM_INPUT, small), params("If-None-Match", "W/\"v0\""));
+        serviceNotFound = get(params(JsonServlet.PARAM_ID, "unknown"));
+        parseError = get(params(JsonServlet.PARAM_ID, "echo", JsonServlet.PARAM_INPUT, "{\"id\":"));
+        invalidInput = get(params(JsonServlet.PARAM_ID, "echo", JsonServlet.PARAM_INPUT, "{\"id\":3}"));
+        applicationError = get(params(JsonServlet.PARAM_ID, "failing", JsonServlet.PARAM_INPUT, small));
+    }
+
+    /**
+     * Servlet init-params of the benchmarked configuration.
+     *
+     * @return
+     */
+    protected Map<String, String> getInitParams() {
+        return Collections.emptyMap();
+    }
+
+    @TearDown
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Benchmark
+    public int listServices() throws Exception {
+        return service(listing);
+    }
+
+    @Benchmark
+    public int inputSchema() throws Exception {
+        return service(inputSchema);
+    }
+
+    @Benchmark
+    public int outputSchema() throws Exception {
+        return service(outputSchema);
+    }
+
+    @Benchmark
+    public int smallInput() throws Exception {
+        return service(smallInput);
+    }
+
+    @Benchmark
+    public int largeInput() throws Exception {
+        return service(largeInput);
+    }
+
+    @Benchmark
+    public int conditionalNotModified() throws Exception {
+        return service(notModified);
+    }
+
+    @Benchmark
+    public int conditionalModified() throws Exception {
+        return service(modified);
+    }
+
+    @Benchmark
+    public int serviceNotFound() throws Exception {
+        return service(serviceNotFound);
+    }
+
+    @Benchmark
+    public int parseError() throws Exception {
+        return service(parseError);
+    }
+
+    @Benchmark
+    public int invalidInput() throws Exception {
+        return service(invalidInput);
+    }
+
+    @Benchmark
+    public int applicationError() throws Exception {
+        return service(applicationError);
+    }
+
+    private int service(HttpServletRequest request) throws Exception {
+        response.reset();
+        servlet.service(request, response.getResponse());
+        return response.getStatus();
+    }
+
+    private static HttpServletRequest get(Map<String, String> params) {
+        return ServletMocks.createRequest("GET", params, Collections.<String, String>emptyMap());
+    }
+
+    private static Map<String, String> params(String... keyValues) {
+        Map<String, String> ret = new HashMap<String, String>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            ret.put(keyValues[i], keyValues[i + 1]);
+        }
+        return ret;
+    }
+}
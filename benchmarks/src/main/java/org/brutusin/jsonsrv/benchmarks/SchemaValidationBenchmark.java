@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
+import org.brutusin.jsonsrv.JsonService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the generic input schema validation of the JSON SPI with the
+ * compiled validator of the service, on already parsed inputs of different
+ * sizes.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaValidationBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int size;
+
+    private JsonService service;
+    private JsonNode input;
+
+    @Setup
+    public void setup() throws Exception {
+        service = new JsonService("echo", new EchoAction(), null);
+        if (service.getCompiledInputSchema() == null) {
+            throw new IllegalStateException("Input schema of the service could not be compiled: " + service.getInputSchema());
+        }
+        input = JsonCodec.getInstance().parse(Payload.createJson(size));
+        if (!service.getCompiledInputSchema().isValid(input)) {
+            throw new IllegalStateException("Benchmark input is not valid");
+        }
+    }
+
+    @Benchmark
+    public JsonNode generic() throws Exception {
+        service.getValidationInputSchema().validate(input);
+        return input;
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return service.getCompiledInputSchema().isValid(input);
+    }
+}
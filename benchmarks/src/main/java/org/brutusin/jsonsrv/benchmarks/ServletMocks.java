@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Minimal dynamic-proxy based servlet API objects, enough to drive
+ * <code>JsonServlet</code> out of a container.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class ServletMocks {
+
+    private ServletMocks() {
+    }
+
+    public static ServletConfig createConfig(final Map<String, String> initParams) {
+        return proxy(ServletConfig.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getInitParameterNames")) {
+                    return Collections.enumeration(initParams.keySet());
+                } else if (name.equals("getInitParameter")) {
+                    return initParams.get((String) args[0]);
+                } else if (name.equals("getServletName")) {
+                    return "jsonsrv";
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    public static HttpServletRequest createRequest(final String method, Map<String, String> params, final Map<String, String> headers) {
+        final Map<String, String[]> parameterMap = new LinkedHashMap<String, String[]>();
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            parameterMap.put(entry.getKey(), new String[]{entry.getValue()});
+        }
+        return proxy(HttpServletRequest.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+                String name = m.getName();
+                if (name.equals("getMethod")) {
+                    return method;
+                } else if (name.equals("getParameter")) {
+                    String[] values = parameterMap.get((String) args[0]);
+                    return values == null ? null : values[0];
+                } else if (name.equals("getParameterMap")) {
+                    return parameterMap;
+                } else if (name.equals("getHeader")) {
+                    return headers.get((String) args[0]);
+                } else if (name.equals("getDateHeader")) {
+                    return -1L;
+                } else if (name.equals("getRequestURL")) {
+                    return new StringBuffer("http://localhost/srv");
+                } else if (name.equals("getProtocol")) {
+                    return "HTTP/1.1";
+                }
+                return defaultValue(m);
+            }
+        });
+    }
+
+    public static MockResponse createResponse() {
+        return new MockResponse();
+    }
+
+    /**
+     * Response that discards the body, keeping the count of bytes written and
+     * the last status set.
+     */
+    public static final class MockResponse {
+
+        private final Map<String, Object> headers = new HashMap<String, Object>();
+        private final CountingOutputStream os = new CountingOutputStream();
+        private int status;
+        private final HttpServletResponse response = proxy(HttpServletResponse.class, new InvocationHandler() {
+            private PrintWriter writer;
+
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+                String name = m.getName();
+                if (name.equals("getOutputStream")) {
+                    return os;
+                } else if (name.equals("getWriter")) {
+                    if (writer == null) {
+                        writer = new PrintWriter(new OutputStreamWriter(os, "UTF-8"));
+                    }
+                    return writer;
+                } else if (name.equals("setStatus")) {
+                    status = (Integer) args[0];
+                    return null;
+                } else if (name.startsWith("set") && name.endsWith("Header") || name.startsWith("add") && name.endsWith("Header")) {
+                    headers.put((String) args[0], args[1]);
+                    return null;
+                } else if (name.equals("getHeader")) {
+                    Object value = headers.get((String) args[0]);
+                    return value == null ? null : value.toString();
+                } else if (name.equals("containsHeader")) {
+                    return headers.containsKey((String) args[0]);
+                } else if (name.equals("getCharacterEncoding")) {
+                    return "UTF-8";
+                } else if (name.equals("encodeRedirectURL") || name.equals("encodeURL")) {
+                    return args[0];
+                } else if (name.equals("getStatus")) {
+                    return status;
+                }
+                return defaultValue(m);
+            }
+        });
+
+        public HttpServletResponse getResponse() {
+            return response;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public long getBytesWritten() {
+            return os.count;
+        }
+
+        /**
+         * Prepares the response to be used again.
+         */
+        public void reset() {
+            status = 200;
+            headers.clear();
+        }
+    }
+
+    private static final class CountingOutputStream extends ServletOutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) throws IOException {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+        }
+    }
+
+    private static <T> T proxy(Class<T> clazz, InvocationHandler handler) {
+        return clazz.cast(Proxy.newProxyInstance(ServletMocks.class.getClassLoader(), new Class[]{clazz}, handler));
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type.isPrimitive() && type != void.class) {
+            throw new UnsupportedOperationException(method.toString());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pending result of an asynchronous action execution. Actions create an
+ * instance, return it from their <code>executeAsync(..)</code> method, and
+ * complete it later (from any thread) by calling {@link #complete(java.lang.Object)}
+ * or {@link #fail(java.lang.Throwable)}.
+ *
+ * @see AsyncSafeAction
+ * @see AsyncUnsafeAction
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ * @param <O> Output POJO class
+ */
+public final class ActionFuture<O> implements Future<O> {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+    private boolean done;
+    private boolean cancelled;
+    private O value;
+    private Throwable failure;
+
+    /**
+     * Completes the execution with the given output.
+     *
+     * @param value
+     * @return {@code false} if the future was already completed
+     */
+    public boolean complete(O value) {
+        return finish(value, null, false);
+    }
+
+    /**
+     * Completes the execution with an error. The throwable is handled as if it
+     * had been thrown by the synchronous <code>execute(..)</code> method.
+     *
+     * @param failure
+     * @return {@code false} if the future was already completed
+     */
+    public boolean fail(Throwable failure) {
+        if (failure == null) {
+            throw new IllegalArgumentException("Failure cannot be null");
+        }
+        return finish(null, failure, false);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(null, new CancellationException(), true);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public O get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return getNow();
+    }
+
+    @Override
+    public O get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getNow();
+    }
+
+    /**
+     * Registers a listener to be run once the future is completed, by the
+     * completing thread, or immediately if it is already completed.
+     */
+    void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!done) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private synchronized O getNow() throws ExecutionException {
+        if (cancelled) {
+            throw (CancellationException) failure;
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return value;
+    }
+
+    private boolean finish(O value, Throwable failure, boolean cancelled) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.done = true;
+            this.value = value;
+            this.failure = failure;
+            this.cancelled = cancelled;
+            toRun = new ArrayList<Runnable>(listeners);
+            listeners.clear();
+        }
+        latch.countDown();
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the completion of the future, unwrapping the execution error.
+     */
+    static <O> O await(ActionFuture<O> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+}
@@ -16,13 +16,17 @@
 package org.brutusin.jsonsrv;
 
 /**
- * 
+ * Service mapping of a <code>jsonsrv.json</code> file. Optionally, a bulkhead
+ * can be configured for the service, by setting a positive
+ * <code>maxConcurrency</code> (see {@link ServiceLimits}).
+ *
  * @author Ignacio del Valle Alles idelvall@brutusin.org
  */
 public class ActionMapping {
 
     private String id;
     private String className;
+    private ServiceLimits limits = new ServiceLimits();
 
     public String getId() {
         return id;
@@ -39,4 +43,48 @@ public class ActionMapping {
     public void setClassName(String className) {
         this.className = className;
     }
+
+    public int getMaxConcurrency() {
+        return limits.getMaxConcurrency();
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        limits.setMaxConcurrency(maxConcurrency);
+    }
+
+    public int getMaxQueueSize() {
+        return limits.getMaxQueueSize();
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+        limits.setMaxQueueSize(maxQueueSize);
+    }
+
+    public long getQueueTimeout() {
+        return limits.getQueueTimeout();
+    }
+
+    public void setQueueTimeout(long queueTimeout) {
+        limits.setQueueTimeout(queueTimeout);
+    }
+
+    public boolean isAdaptive() {
+        return limits.isAdaptive();
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        limits.setAdaptive(adaptive);
+    }
+
+    /**
+     * @return bulkhead configuration of the service, or {@code null} if not
+     * limited
+     */
+    ServiceLimits toLimits() {
+        if (limits.getMaxConcurrency() <= 0) {
+            return null;
+        }
+        limits.setServiceId(id);
+        return limits;
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv;
+
+/**
+ * {@link SafeAction} whose business logic is executed asynchronously, thus
+ * not blocking a container thread while waiting for I/O. Implementations
+ * start the work in {@link #executeAsync(java.lang.Object)} and complete the
+ * returned {@link ActionFuture} when done.
+ * <br/><br/>When possible the framework servlet handles these actions using
+ * Servlet 3.0 asynchronous processing, otherwise (batch items, or containers
+ * or filters not supporting async processing) the calling thread waits for
+ * the completion of the future.
+ * <br/><br/><b>Action context</b>: {@link JsonActionContext} is available
+ * during the execution of {@link #executeAsync(java.lang.Object)}. Tasks
+ * continuing the work in other threads can access it by being wrapped with
+ * {@link JsonActionContext#wrap(java.lang.Runnable)}.
+ *
+ * @see AsyncUnsafeAction
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ * @param <I> Input POJO class.
+ * @param <O> Output POJO class
+ */
+public abstract class AsyncSafeAction<I, O> extends SafeAction<I, O> implements AsyncAction<I, O> {
+
+    /**
+     * Starts the business logic execution.
+     *
+     * @param input
+     * @return a future to be completed with the output of the execution
+     * @throws Exception
+     */
+    @Override
+    public abstract ActionFuture<O> executeAsync(I input) throws Exception;
+
+    /**
+     * Blocking execution.
+     *
+     * @param input
+     * @return
+     * @throws Exception
+     */
+    @Override
+    public final O execute(I input) throws Exception {
+        return ActionFuture.await(executeAsync(input));
+    }
+}
@@ -26,6 +26,13 @@ public abstract class JsonActionContext {
 
     private static final ThreadLocal<JsonActionContext> CONTEXTS = new ThreadLocal();
 
+    /**
+     * Returns the context of the action being executed by the current thread.
+     * The instance is only valid during the execution; use
+     * {@link #wrap(java.lang.Runnable)} to access it from other threads.
+     *
+     * @return
+     */
     public static JsonActionContext getInstance() {
         return CONTEXTS.get();
     }
@@ -35,7 +42,73 @@ public abstract class JsonActionContext {
     }
 
     static void clear() {
-        CONTEXTS.remove();
+        // Entry kept to avoid allocating a new one in the next request of the thread
+        CONTEXTS.set(null);
+    }
+
+    /**
+     * Returns a task that runs the given one with this context installed in
+     * the executing thread. Meant for asynchronous actions continuing their
+     * work in other threads.
+     *
+     * @param task
+     * @return
+     */
+    public final Runnable wrap(final Runnable task) {
+        final JsonActionContext context = snapshot();
+        return new Runnable() {
+            @Override
+            public void run() {
+                JsonActionContext previous = CONTEXTS.get();
+                CONTEXTS.set(context);
+                try {
+                    task.run();
+                } finally {
+                    if (previous == null) {
+                        CONTEXTS.remove();
+                    } else {
+                        CONTEXTS.set(previous);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns an immutable copy of this context, since instances set by the
+     * framework are reused among requests.
+     */
+    private JsonActionContext snapshot() {
+        final Object servlet = getServlet();
+        final Object request = getRequest();
+        final Object response = getResponse();
+        return new JsonActionContext() {
+            @Override
+            public Object getServlet() {
+                return servlet;
+            }
+
+            @Override
+            public Object getRequest() {
+                return request;
+            }
+
+            @Override
+            public Object getResponse() {
+                return response;
+            }
+        };
+    }
+
+    /**
+     * Returns the framework servlet processing the request. Overridden by the
+     * framework context; custom implementations not bound to a servlet return
+     * {@code null}.
+     *
+     * @return the framework servlet processing the request, or {@code null}
+     */
+    public Object getServlet() {
+        return null;
     }
 
     public abstract Object getRequest();
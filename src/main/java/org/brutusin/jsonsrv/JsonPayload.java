@@ -0,0 +1,347 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.utils.Miscellaneous;
+import org.brutusin.jsonsrv.utils.DeflaterPool;
+import org.brutusin.jsonsrv.utils.JsonSrvUtils;
+
+/**
+ * JSON message to be rendered. Payloads are written incrementally as UTF-8
+ * bytes to the target stream, so no intermediate representation of the whole
+ * message is needed.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public abstract class JsonPayload {
+
+    private static final Logger LOGGER = Logger.getLogger(JsonPayload.class.getName());
+    private static final String[] NO_CODINGS = new String[0];
+    private static final String[] GZIP_CODING = {"gzip"};
+
+    /**
+     * Writes the UTF-8 representation of this payload.
+     *
+     * @param os
+     * @throws IOException
+     */
+    public abstract void writeTo(OutputStream os) throws IOException;
+
+    /**
+     * Materializes the payload. Meant for renderers that need the full JSON
+     * string.
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        try {
+            return new String(toByteArray(), "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * Materializes the UTF-8 representation of the payload.
+     *
+     * @return
+     */
+    public byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            writeTo(baos);
+            return baos.toByteArray();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return length in bytes of the UTF-8 representation, or -1 if not known
+     * in advance
+     */
+    public int getLength() {
+        return -1;
+    }
+
+    /**
+     * @return HTTP content-codings (by order of preference) in which
+     * {@link #getEncoded(String)} can return this payload
+     */
+    public String[] getContentCodings() {
+        return NO_CODINGS;
+    }
+
+    /**
+     * Returns the payload encoded with the given HTTP content-coding, if
+     * available.
+     *
+     * @param contentCoding for example "gzip"
+     * @return the encoded bytes, or {@code null} if not available
+     */
+    public byte[] getEncoded(String contentCoding) {
+        return null;
+    }
+
+    /**
+     * Minimum length in bytes for the payload to be compressed on the fly by
+     * the renderer, in those of its {@link #getContentCodings()} for which
+     * {@link #getEncoded(String)} returns {@code null}.
+     *
+     * @return the threshold, or -1 if the payload is not to be compressed on
+     * the fly
+     */
+    public int getCompressionThreshold() {
+        return -1;
+    }
+
+    /**
+     * @return pool of the deflaters used to compress the payload on the fly,
+     * or {@code null} if it is not to be compressed on the fly
+     */
+    public DeflaterPool getDeflaterPool() {
+        return null;
+    }
+
+    /**
+     * @return {@code true} if the payload is produced while being written (see
+     * {@link StreamingSafeAction}), so it should not be materialized
+     */
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * @return strong entity tag (quoted) identifying the contents of the
+     * payload, or {@code null} if not available
+     */
+    public String getEtag() {
+        return null;
+    }
+
+    public static JsonPayload valueOf(final byte[] utf8) {
+        return new JsonPayload() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                os.write(utf8);
+            }
+
+            @Override
+            public byte[] toByteArray() {
+                return utf8;
+            }
+
+            @Override
+            public int getLength() {
+                return utf8.length;
+            }
+        };
+    }
+
+    /**
+     * Returns a payload whose UTF-8 representation, gzipped variant and entity
+     * tag are computed once, at creation time. Meant for messages that do not
+     * change during the servlet life-cycle.
+     *
+     * @param json
+     * @return
+     */
+    public static JsonPayload precompute(String json) {
+        try {
+            final byte[] utf8 = json.getBytes("UTF-8");
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            GZIPOutputStream gzos = new GZIPOutputStream(baos);
+            gzos.write(utf8);
+            gzos.close();
+            final byte[] gzipped = baos.size() < utf8.length ? baos.toByteArray() : null;
+            final String etag = "\"" + JsonSrvUtils.md5Hex(utf8) + "\"";
+            return new JsonPayload() {
+                @Override
+                public void writeTo(OutputStream os) throws IOException {
+                    os.write(utf8);
+                }
+
+                @Override
+                public byte[] toByteArray() {
+                    return utf8;
+                }
+
+                @Override
+                public int getLength() {
+                    return utf8.length;
+                }
+
+                @Override
+                public String[] getContentCodings() {
+                    return gzipped != null ? GZIP_CODING : NO_CODINGS;
+                }
+
+                @Override
+                public byte[] getEncoded(String contentCoding) {
+                    return "gzip".equals(contentCoding) ? gzipped : null;
+                }
+
+                @Override
+                public String getEtag() {
+                    return etag;
+                }
+            };
+        } catch (IOException ex) {
+            throw new AssertionError();
+        }
+    }
+
+    public static JsonPayload valueOf(final String json) {
+        return new JsonPayload() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                JsonSrvUtils.writeUTF8(json, os);
+            }
+
+            @Override
+            public String toString() {
+                return json;
+            }
+        };
+    }
+
+    /**
+     * Composes a JSON array from the given payloads.
+     *
+     * @param items
+     * @return
+     */
+    public static JsonPayload valueOf(final JsonPayload[] items) {
+        return new JsonPayload() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                os.write('[');
+                for (int i = 0; i < items.length; i++) {
+                    if (i > 0) {
+                        os.write(',');
+                    }
+                    items[i].writeTo(os);
+                }
+                os.write(']');
+            }
+        };
+    }
+
+    /**
+     * Serializes the response envelope member by member, so the error and the
+     * value are never concatenated into a single string.
+     *
+     * @param response
+     * @return
+     */
+    public static JsonPayload valueOf(final JsonResponse<?> response) {
+        return valueOf(response, null);
+    }
+
+    /**
+     * Returns the payload of a response of the given service, serializing its
+     * value with the output binding of the service.
+     *
+     * @param response
+     * @param service can be null
+     * @return
+     */
+    public static JsonPayload valueOf(final JsonResponse<?> response, final JsonService<?, ?> service) {
+        return new JsonPayload() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                JsonCodec codec = JsonCodec.getInstance();
+                boolean first = true;
+                os.write('{');
+                if (response.getError() != null) {
+                    JsonSrvUtils.writeUTF8("\"error\":", os);
+                    JsonSrvUtils.writeUTF8(codec.transform(response.getError()), os);
+                    first = false;
+                }
+                if (response.getValue() != null) {
+                    if (!first) {
+                        os.write(',');
+                    }
+                    JsonSrvUtils.writeUTF8("\"value\":", os);
+                    if (response.getValue() instanceof Iterator) {
+                        RuntimeException streamError = writeElements((Iterator<?>) response.getValue(), service, os);
+                        if (streamError != null) {
+                            // The status code is already sent, so the error is reported in the envelope, after the elements written
+                            LOGGER.log(Level.SEVERE, null, streamError);
+                            JsonSrvUtils.writeUTF8(",\"error\":", os);
+                            JsonSrvUtils.writeUTF8(codec.transform(response.new ErrorDescription(JsonResponse.Error.internalError, Miscellaneous.getRootCauseMessage(streamError))), os);
+                        }
+                    } else {
+                        JsonSrvUtils.writeUTF8(service != null ? service.transformOutput(response.getValue()) : codec.transform(response.getValue()), os);
+                    }
+                }
+                os.write('}');
+            }
+
+            @Override
+            public boolean isStreaming() {
+                return response.getValue() instanceof Iterator;
+            }
+        };
+    }
+
+    /**
+     * Writes the elements of the iterator as a JSON array, closing the array
+     * if the iteration fails.
+     *
+     * @return the error thrown by the iterator or the element serialization,
+     * or {@code null} if all the elements were written
+     */
+    private static RuntimeException writeElements(Iterator<?> it, JsonService<?, ?> service, OutputStream os) throws IOException {
+        RuntimeException ret = null;
+        os.write('[');
+        try {
+            boolean first = true;
+            while (it.hasNext()) {
+                Object element = it.next();
+                String json = service != null ? service.transformOutput(element) : JsonCodec.getInstance().transform(element);
+                if (!first) {
+                    os.write(',');
+                }
+                JsonSrvUtils.writeUTF8(json, os);
+                first = false;
+            }
+        } catch (RuntimeException ex) {
+            ret = ex;
+        } finally {
+            if (it instanceof Closeable) {
+                try {
+                    ((Closeable) it).close();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, null, ex);
+                }
+            }
+        }
+        os.write(']');
+        return ret;
+    }
+}
@@ -31,7 +31,10 @@ public class JsonResponse<E> {
         internalError(-32603, "Internal error", "Internal service error"),
         securityError(-32000,"Security error","Security error"),
         applicationError(-32001,"Application error","Error contemplated by the application logic"),
-        invalidMethodError(-32002,"HTTP invalid method","The HTTP method used in the request is not allowed by target resource");
+        invalidMethodError(-32002,"HTTP invalid method","The HTTP method used in the request is not allowed by target resource"),
+        timeoutError(-32003,"Timeout error","The service did not complete its execution in the time allowed"),
+        requestTooLargeError(-32004,"Request too large","The request body exceeds the maximum size allowed"),
+        overloadError(-32005,"Service overloaded","The service reached its concurrency limit. Retry later");
 
         private final int code;
         private final String name;
@@ -54,6 +57,19 @@ public class JsonResponse<E> {
         public String getDescription() {
             return description;
         }
+
+        /**
+         * @param code
+         * @return the error with the given code, or {@code null} if not found
+         */
+        public static Error valueOf(int code) {
+            for (Error error : values()) {
+                if (error.code == code) {
+                    return error;
+                }
+            }
+            return null;
+        }
     }
     
     private ErrorDescription error;
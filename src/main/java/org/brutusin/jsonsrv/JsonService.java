@@ -15,9 +15,20 @@
  */
 package org.brutusin.jsonsrv;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.logging.Logger;
 import net.jodah.typetools.TypeResolver;
+import org.brutusin.commons.json.ParseException;
+import org.brutusin.commons.json.ValidationException;
 import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
 import org.brutusin.commons.json.spi.JsonSchema;
+import org.brutusin.commons.utils.Miscellaneous;
+import org.brutusin.jsonsrv.binding.TypeBinding;
+import org.brutusin.jsonsrv.binding.UnsupportedBindingException;
+import org.brutusin.jsonsrv.validation.CompiledSchema;
 
 /**
  *
@@ -25,50 +36,303 @@ import org.brutusin.commons.json.spi.JsonSchema;
  */
 public final class JsonService<I, O> {
 
+    private static final Logger LOGGER = Logger.getLogger(JsonService.class.getName());
+    private static final String STREAMING_DESCRIPTION = "Streamed array. If an error occurs once the streaming has started, the array contains the elements written before it, and the error is reported in the 'error' member of the response";
+
     private final String id;
     private final JsonAction<I, O> action;
-    private final String description;
+    /**
+     * Lazily initialized state, published through the volatile fields
+     */
+    private String description;
+    private volatile boolean descriptionLoaded;
+    private volatile Schemas schemas;
 
-    private final String inputSchema;
-    private final String outputSchema;
-    private final JsonSchema validationInputSchema;
+    private final TypeBinding inputBinding;
+    private final TypeBinding outputBinding;
+    /**
+     * Last header values computed, reused while the caching info of the
+     * action does not change
+     */
+    private volatile HeaderValue etagHeader;
+    private volatile HeaderValue cacheControlHeader;
     private final Class<I> inputClass;
     private final Class<O> outputClass;
+    /**
+     * Element class of {@link StreamingSafeAction} services
+     */
+    private final Class<?> elementClass;
 
-    public JsonService(String id, JsonAction action, String description) {
-        this.id = id;
-        this.action = action;
+    public JsonService(String id, JsonAction<?, ?> action, String description) {
+        this(id, action, description, true);
+    }
+
+    /**
+     * @param id
+     * @param action
+     * @param description
+     * @param bindingsEnabled whether to create dedicated bindings for the input
+     * and output classes, instead of always using the JSON codec
+     */
+    public JsonService(String id, JsonAction<?, ?> action, String description, boolean bindingsEnabled) {
+        this(id, action, bindingsEnabled);
         this.description = description;
+        this.descriptionLoaded = true;
+        getSchemas();
+    }
+
+    /**
+     * Creates a service whose description is loaded from the classpath (see
+     * {@link #loadDescription(java.lang.Class)}).
+     *
+     * @param id
+     * @param action
+     * @param bindingsEnabled
+     * @param lazy whether to defer the generation of the schemas and the
+     * loading of the description until they are first needed
+     */
+    public JsonService(String id, JsonAction<?, ?> action, boolean bindingsEnabled, boolean lazy) {
+        this(id, action, bindingsEnabled);
+        if (!lazy) {
+            getDescription();
+            getSchemas();
+        }
+    }
+
+    @SuppressWarnings("unchecked") // the type arguments are the ones resolved from the action class
+    private JsonService(String id, JsonAction<?, ?> action, boolean bindingsEnabled) {
+        this.id = id;
+        this.action = (JsonAction<I, O>) action;
         Class<?>[] types = TypeResolver.resolveRawArguments(JsonAction.class, action.getClass());
         this.inputClass = (Class<I>) types[0];
         this.outputClass = (Class<O>) types[1];
-        this.inputSchema = JsonCodec.getInstance().getSchemaString(this.inputClass);
-        this.outputSchema = JsonCodec.getInstance().getSchemaString(this.outputClass);
-        try {
-            this.validationInputSchema = JsonCodec.getInstance().parseSchema(JsonCodec.getInstance().getSchemaString(this.inputClass));
-        } catch (Exception ex) {
-            throw new Error(ex);
+        if (action instanceof StreamingSafeAction) {
+            this.elementClass = TypeResolver.resolveRawArguments(StreamingSafeAction.class, action.getClass())[1];
+        } else {
+            this.elementClass = null;
+        }
+        this.inputBinding = bindingsEnabled ? TypeBinding.create(this.inputClass) : null;
+        // streamed outputs are bound element by element
+        this.outputBinding = bindingsEnabled ? TypeBinding.create(this.elementClass != null ? this.elementClass : this.outputClass) : null;
+    }
+
+    /**
+     * Loads the markdown description attached to an action class, from the
+     * classpath resource with the same name (<code>foo/Bar.md</code> for
+     * action class <code>foo.Bar</code>).
+     *
+     * @param actionClass
+     * @return the description, or {@code null} if the resource does not exist
+     * @throws IOException
+     */
+    public static String loadDescription(Class<?> actionClass) throws IOException {
+        String name = actionClass.getName().replace(".", "/") + ".md";
+        InputStream is = actionClass.getClassLoader().getResourceAsStream(name);
+        if (is == null) {
+            LOGGER.warning("Could not find service description resource '" + name + "'. Consider creating it in markdown format for better service maintainability");
+            return null;
+        }
+        return Miscellaneous.toString(is, "UTF-8");
+    }
+
+    private Schemas getSchemas() {
+        Schemas ret = this.schemas;
+        if (ret == null) {
+            synchronized (this) {
+                ret = this.schemas;
+                if (ret == null) {
+                    String outputSchema;
+                    if (this.elementClass != null) {
+                        outputSchema = "{\"type\":\"array\",\"description\":\"" + STREAMING_DESCRIPTION + "\",\"items\":" + JsonCodec.getInstance().getSchemaString(this.elementClass) + "}";
+                    } else {
+                        outputSchema = JsonCodec.getInstance().getSchemaString(this.outputClass);
+                    }
+                    ret = new Schemas(JsonCodec.getInstance().getSchemaString(this.inputClass), outputSchema);
+                    this.schemas = ret;
+                }
+            }
         }
+        return ret;
     }
 
     public String getId() {
         return id;
     }
 
-    public JsonAction getAction() {
+    public JsonAction<I, O> getAction() {
         return action;
     }
 
     public String getInputSchema() {
-        return inputSchema;
+        return getSchemas().inputSchema;
     }
 
     public String getOutputSchema() {
-        return outputSchema;
+        return getSchemas().outputSchema;
+    }
+
+    /**
+     * @return precomputed payload of the input schema
+     */
+    public JsonPayload getInputSchemaPayload() {
+        return getSchemas().inputSchemaPayload;
+    }
+
+    /**
+     * @return precomputed payload of the output schema
+     */
+    public JsonPayload getOutputSchemaPayload() {
+        return getSchemas().outputSchemaPayload;
     }
 
     public JsonSchema getValidationInputSchema() {
-        return validationInputSchema;
+        return getSchemas().validationInputSchema;
+    }
+
+    /**
+     * @return input schema compiled into a specialized validator, or
+     * {@code null} if the schema uses features not supported by the compiler
+     */
+    public CompiledSchema getCompiledInputSchema() {
+        return getSchemas().compiledInputSchema;
+    }
+
+    /**
+     * Parses the input string a single time, validates the resulting tree
+     * against the input schema of the service and binds it to the input class.
+     *
+     * @param inputStr
+     * @return
+     * @throws ParseException
+     * @throws ValidationException
+     */
+    public I parseInput(String inputStr) throws ParseException, ValidationException {
+        if (inputStr == null) {
+            return null;
+        }
+        return loadInput(JsonCodec.getInstance().parse(inputStr));
+    }
+
+    /**
+     * Validates an already parsed input against the input schema of the
+     * service and binds it to the input class.
+     *
+     * @param inputNode
+     * @return
+     * @throws ValidationException
+     */
+    public I loadInput(JsonNode inputNode) throws ValidationException {
+        if (inputNode == null) {
+            return null;
+        }
+        // Generic validation is only needed when the input is not proven valid by the compiled schema, and provides the error messages
+        Schemas sch = getSchemas();
+        if (sch.compiledInputSchema == null || !sch.compiledInputSchema.isValid(inputNode)) {
+            sch.validationInputSchema.validate(inputNode);
+        }
+        if (this.inputBinding != null) {
+            try {
+                @SuppressWarnings("unchecked") // the binding was created for the input class
+                I input = (I) this.inputBinding.read(inputNode);
+                return input;
+            } catch (UnsupportedBindingException ex) {
+                // bound by the codec
+            }
+        }
+        return JsonCodec.getInstance().load(inputNode, this.inputClass);
+    }
+
+    /**
+     * Returns the tree identifying a bound input in cache keys (see
+     * {@link org.brutusin.jsonsrv.caching.EtagRegistry#getKey(String, JsonNode)}):
+     * the tree of the bound input, walked through the input binding, or the
+     * validated input tree when the input is not supported by the binding.
+     *
+     * @param input bound input
+     * @param inputNode validated input tree it was bound from
+     * @return
+     */
+    public JsonNode getKeyNode(Object input, JsonNode inputNode) {
+        if (this.inputBinding != null) {
+            try {
+                return this.inputBinding.toNode(input);
+            } catch (UnsupportedBindingException ex) {
+                // not normalized
+            }
+        }
+        return inputNode;
+    }
+
+    /**
+     * Returns the JSON representation of an output of the service, using the
+     * output binding when the value is supported by it, and the JSON codec
+     * otherwise.
+     *
+     * @param output
+     * @return
+     */
+    public String transformOutput(Object output) {
+        if (output instanceof Iterator) {
+            StringBuilder sb = new StringBuilder("[");
+            Iterator<?> it = (Iterator<?>) output;
+            while (it.hasNext()) {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                sb.append(transformOutput(it.next()));
+            }
+            return sb.append(']').toString();
+        }
+        if (this.outputBinding != null) {
+            try {
+                return this.outputBinding.write(output);
+            } catch (UnsupportedBindingException ex) {
+                // serialized by the codec
+            }
+        }
+        return JsonCodec.getInstance().transform(output);
+    }
+
+    /**
+     * @return binding used for the input, or {@code null} if the input class
+     * is not supported and the JSON codec is always used
+     */
+    public TypeBinding getInputBinding() {
+        return inputBinding;
+    }
+
+    /**
+     * @return binding used for the output, or {@code null} if the output class
+     * is not supported and the JSON codec is always used
+     */
+    public TypeBinding getOutputBinding() {
+        return outputBinding;
+    }
+
+    /**
+     * @param etag
+     * @return value of the <code>ETag</code> header for the weak entity tag
+     */
+    String getWeakEtagHeader(String etag) {
+        HeaderValue header = etagHeader;
+        if (header == null || !header.key.equals(etag)) {
+            header = new HeaderValue(etag, "W/\"" + etag + "\"");
+            etagHeader = header;
+        }
+        return header.value;
+    }
+
+    /**
+     * @param maxAge
+     * @return value of the <code>Cache-Control</code> header for the max-age
+     */
+    String getExpiringCacheControlHeader(int maxAge) {
+        HeaderValue header = cacheControlHeader;
+        if (header == null || (Integer) header.key != maxAge) {
+            header = new HeaderValue(maxAge, "max-age=" + maxAge + ", private, must-revalidate");
+            cacheControlHeader = header;
+        }
+        return header.value;
     }
 
     public Class<I> getInputClass() {
@@ -79,7 +343,64 @@ public final class JsonService<I, O> {
         return outputClass;
     }
 
+    /**
+     * @return class of the elements of the output, for
+     * {@link StreamingSafeAction} services, or {@code null} otherwise
+     */
+    public Class<?> getElementClass() {
+        return elementClass;
+    }
+
     public String getDescription() {
+        if (!descriptionLoaded) {
+            synchronized (this) {
+                if (!descriptionLoaded) {
+                    try {
+                        description = loadDescription(action.getClass());
+                    } catch (IOException ex) {
+                        throw new Error(ex);
+                    }
+                    descriptionLoaded = true;
+                }
+            }
+        }
         return description;
     }
+
+    /**
+     * Schemas of the service, generated together on first use.
+     */
+    private static final class Schemas {
+
+        private final String inputSchema;
+        private final String outputSchema;
+        private final JsonPayload inputSchemaPayload;
+        private final JsonPayload outputSchemaPayload;
+        private final JsonSchema validationInputSchema;
+        private final CompiledSchema compiledInputSchema;
+
+        Schemas(String inputSchema, String outputSchema) {
+            this.inputSchema = inputSchema;
+            this.outputSchema = outputSchema;
+            this.inputSchemaPayload = JsonPayload.precompute(inputSchema);
+            this.outputSchemaPayload = JsonPayload.precompute(outputSchema);
+            try {
+                this.validationInputSchema = JsonCodec.getInstance().parseSchema(inputSchema);
+                this.compiledInputSchema = CompiledSchema.compile(inputSchema);
+            } catch (Exception ex) {
+                throw new Error(ex);
+            }
+        }
+    }
+
+    private static final class HeaderValue {
+
+        private final Object key;
+        private final String value;
+
+        HeaderValue(Object key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
 }
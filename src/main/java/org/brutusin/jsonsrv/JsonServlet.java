@@ -15,32 +15,77 @@
  */
 package org.brutusin.jsonsrv;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.brutusin.commons.Pair;
 import org.brutusin.commons.json.ParseException;
 import org.brutusin.commons.json.ValidationException;
 import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
 import org.brutusin.commons.utils.Miscellaneous;
 import org.brutusin.jsonsrv.caching.CachingInfo;
 import org.brutusin.jsonsrv.caching.ConditionalCachingInfo;
+import org.brutusin.jsonsrv.caching.EtagRegistry;
 import org.brutusin.jsonsrv.caching.ExpiringCachingInfo;
+import org.brutusin.jsonsrv.caching.HeapResponseCache;
+import org.brutusin.jsonsrv.caching.MappedFileResponseCache;
+import org.brutusin.jsonsrv.caching.OffHeapResponseCache;
+import org.brutusin.jsonsrv.caching.ResponseCache;
 import org.brutusin.jsonsrv.impl.DefaultRenderer;
+import org.brutusin.jsonsrv.metrics.CallTrace;
+import org.brutusin.jsonsrv.metrics.Instrumentation;
+import org.brutusin.jsonsrv.metrics.MetricsRegistry;
+import org.brutusin.jsonsrv.metrics.Phase;
+import org.brutusin.jsonsrv.metrics.ServiceMetrics;
+import org.brutusin.jsonsrv.metrics.SlowCallSampler;
 import org.brutusin.jsonsrv.plugin.Renderer;
+import org.brutusin.jsonsrv.utils.Bulkhead;
+import org.brutusin.jsonsrv.utils.Cbor;
+import org.brutusin.jsonsrv.utils.DeflaterPool;
+import org.brutusin.jsonsrv.utils.DispatchTable;
+import org.brutusin.jsonsrv.utils.JsonSrvUtils;
+import org.brutusin.jsonsrv.utils.SingleFlight;
 
 /**
  *
@@ -52,30 +97,120 @@ public class JsonServlet extends HttpServlet {
     public static final String INIT_PARAM_RENDERER_PARAM = "render-param";
     public static final String INIT_PARAM_DISABLE_SCHEMA = "schema-parameter-disabled";
     public static final String INIT_PARAM_ACCESS_CONTROL = "access-control-allow-origin";
+    public static final String INIT_PARAM_RESPONSE_CACHE_SIZE = "response-cache-size";
+    public static final String INIT_PARAM_RESPONSE_CACHE_MAX_BYTES = "response-cache-max-bytes";
+    public static final String INIT_PARAM_RESPONSE_CACHE_TYPE = "response-cache-type";
+    public static final String INIT_PARAM_RESPONSE_CACHE_FILE = "response-cache-file";
+    public static final String INIT_PARAM_REQUEST_COALESCING = "request-coalescing";
+    public static final String INIT_PARAM_BATCH_THREADS = "batch-threads";
+    public static final String INIT_PARAM_ASYNC_TIMEOUT = "async-timeout";
+    public static final String INIT_PARAM_ACTION_EXECUTOR = "action-executor";
+    public static final String INIT_PARAM_SERVICE_MAX_CONCURRENCY = "service-max-concurrency";
+    public static final String INIT_PARAM_DISABLE_METRICS = "metrics-disabled";
+    public static final String INIT_PARAM_COMPRESSION_THRESHOLD = "compression-threshold";
+    public static final String INIT_PARAM_MAX_REQUEST_SIZE = "max-request-size";
+    public static final String INIT_PARAM_DISABLE_BINDINGS = "bindings-disabled";
+    public static final String INIT_PARAM_RELOAD_INTERVAL = "reload-interval";
+    public static final String INIT_PARAM_INIT_THREADS = "init-threads";
+    public static final String INIT_PARAM_LAZY_INIT = "lazy-init";
+    public static final String INIT_PARAM_ETAG_REGISTRY_SIZE = "etag-registry-size";
+    public static final String INIT_PARAM_INSTRUMENTATION = "instrumentation";
+    public static final String INIT_PARAM_SLOW_CALL_SAMPLES = "slow-call-samples";
+    public static final String INIT_PARAM_RESPONSE_TIME_SLO = "response-time-slo";
 
     public static final String PARAM_ID = "id";
     public static final String PARAM_INPUT = "input";
     public static final String PARAM_SCHEMA = "schema";
+    public static final String PARAM_BATCH = "batch";
 
     private static final Logger LOGGER = Logger.getLogger(JsonServlet.class.getName());
 
-    private static final List<String> SUPPORTED_PARAMS = Miscellaneous.createList(INIT_PARAM_RENDERER, INIT_PARAM_DISABLE_SCHEMA, INIT_PARAM_RENDERER_PARAM, INIT_PARAM_ACCESS_CONTROL);
+    private static final long DEFAULT_RESPONSE_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+    private static final String RESPONSE_CACHE_TYPE_HEAP = "heap";
+    private static final String RESPONSE_CACHE_TYPE_OFF_HEAP = "off-heap";
+    private static final String RESPONSE_CACHE_TYPE_MAPPED = "mapped";
+    private static final long DEFAULT_ASYNC_TIMEOUT = 30000;
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+    private static final int DEFAULT_MAX_REQUEST_SIZE = 1024 * 1024;
+    private static final int INIT_REPORT_SIZE = 10;
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final String JSON_MEDIA_TYPE = "application/json";
+    private static final String[] CONTENT_CODINGS = {DeflaterPool.GZIP, DeflaterPool.DEFLATE};
+
+    private static final List<String> SUPPORTED_PARAMS = Miscellaneous.createList(INIT_PARAM_RENDERER, INIT_PARAM_DISABLE_SCHEMA, INIT_PARAM_RENDERER_PARAM, INIT_PARAM_ACCESS_CONTROL, INIT_PARAM_RESPONSE_CACHE_SIZE, INIT_PARAM_RESPONSE_CACHE_MAX_BYTES, INIT_PARAM_RESPONSE_CACHE_TYPE, INIT_PARAM_RESPONSE_CACHE_FILE, INIT_PARAM_REQUEST_COALESCING, INIT_PARAM_BATCH_THREADS, INIT_PARAM_ASYNC_TIMEOUT, INIT_PARAM_ACTION_EXECUTOR, INIT_PARAM_SERVICE_MAX_CONCURRENCY, INIT_PARAM_DISABLE_METRICS, INIT_PARAM_COMPRESSION_THRESHOLD, INIT_PARAM_MAX_REQUEST_SIZE, INIT_PARAM_DISABLE_BINDINGS, INIT_PARAM_RELOAD_INTERVAL, INIT_PARAM_INIT_THREADS, INIT_PARAM_LAZY_INIT, INIT_PARAM_ETAG_REGISTRY_SIZE, INIT_PARAM_INSTRUMENTATION, INIT_PARAM_SLOW_CALL_SAMPLES, INIT_PARAM_RESPONSE_TIME_SLO);
 
     public enum SchemaMode {
 
         I, O;
+
+        /**
+         * Case-insensitive and allocation-free version of
+         * {@link #valueOf(String)}, ignoring surrounding whitespace.
+         *
+         * @param str
+         * @return the mode, or {@code null} if not valid
+         */
+        public static SchemaMode parse(String str) {
+            SchemaMode ret = null;
+            for (int i = 0; i < str.length(); i++) {
+                char c = str.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                if (ret != null) {
+                    return null;
+                }
+                if (c == 'i' || c == 'I') {
+                    ret = I;
+                } else if (c == 'o' || c == 'O') {
+                    ret = O;
+                } else {
+                    return null;
+                }
+            }
+            return ret;
+        }
     }
 
-    private final Map<String, JsonService> services = new HashMap();
-    private final JsonResponse servicesResponse = new JsonResponse();
+    private volatile ServiceTable serviceTable;
+
+    private static final JsonPayload EMPTY_PAYLOAD = JsonPayload.precompute("");
 
-    private String stringArraySchema;
+    private JsonPayload stringArraySchemaPayload;
     private Renderer renderer;
     private boolean schemaParameterDisabled;
     private String accessControlOrigin;
+    private ResponseCache responseCache;
+    private EtagRegistry etagRegistry;
+    private SingleFlight<byte[]> singleFlight;
+    private final ConcurrentMap<String, ActionFuture<Object>> inFlightSubmissions = new ConcurrentHashMap<String, ActionFuture<Object>>();
+    private final AtomicLong coalescedSubmissions = new AtomicLong();
+    private ExecutorService batchExecutor;
+    private long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+    private ExecutorService actionExecutor;
+    private int serviceMaxConcurrency;
+    private boolean bindingsEnabled;
+    private int initThreads = 1;
+    private boolean lazyInit;
+    private ScheduledExecutorService reloadScheduler;
+    private String mappingsFingerprint;
+    private MetricsRegistry metrics;
+    private Instrumentation instrumentation;
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    private DeflaterPool deflaterPool;
+    private int maxRequestSize = DEFAULT_MAX_REQUEST_SIZE;
 
+    /**
+     * If initialization fails, the resources already acquired (MBean,
+     * executors, response cache file...) are released by calling
+     * {@link #destroy()}, since the container does not call it for servlets
+     * that fail to initialize.
+     *
+     * @throws ServletException
+     */
     @Override
     public final void init() throws ServletException {
+        boolean initialized = false;
         try {
             Enumeration<String> initParameterNames = getServletConfig().getInitParameterNames();
             while (initParameterNames.hasMoreElements()) {
@@ -91,8 +226,8 @@ public class JsonServlet extends HttpServlet {
             String rendererClassName = getServletConfig().getInitParameter(INIT_PARAM_RENDERER);
             if (rendererClassName != null) {
                 try {
-                    Class rendererClass = getClassLoader().loadClass(rendererClassName);
-                    renderer = (Renderer) rendererClass.newInstance();
+                    Class<?> rendererClass = getClassLoader().loadClass(rendererClassName);
+                    renderer = (Renderer) rendererClass.getConstructor().newInstance();
                 } catch (Exception ex) {
                     throw new Error("Error loading renderer " + rendererClassName, ex);
                 }
@@ -100,28 +235,335 @@ public class JsonServlet extends HttpServlet {
                 renderer = new DefaultRenderer();
             }
             renderer.init(getServletConfig().getInitParameter(INIT_PARAM_RENDERER_PARAM));
-            stringArraySchema = JsonCodec.getInstance().getSchemaString(String[].class);
-
-            Map<String, JsonAction> actions = loadActions();
-            ServiceItem[] serviceItems = new ServiceItem[actions.size()];
-            int i = 0;
-            for (Map.Entry<String, JsonAction> entry : actions.entrySet()) {
-                String id = entry.getKey();
-                JsonAction action = entry.getValue();
-                String description = loadDescription(action);
-                JsonService service = new JsonService(id, action, description);
-                services.put(id, service);
-                ServiceItem si = new ServiceItem();
-                si.setId(id);
-                si.setSafe(action instanceof SafeAction);
-                si.setDescription(description);
-                serviceItems[i++] = si;
-            }
-            this.servicesResponse.setValue(serviceItems);
+            stringArraySchemaPayload = JsonPayload.precompute(JsonCodec.getInstance().getSchemaString(String[].class));
+
+            bindingsEnabled = !Boolean.valueOf(getServletConfig().getInitParameter(INIT_PARAM_DISABLE_BINDINGS));
+            if (!Boolean.valueOf(getServletConfig().getInitParameter(INIT_PARAM_DISABLE_METRICS))) {
+                metrics = new MetricsRegistry();
+                metrics.registerMBean(getServletConfig().getServletName() != null ? getServletConfig().getServletName() : getClass().getName());
+            }
+            String instrumentationClassName = getServletConfig().getInitParameter(INIT_PARAM_INSTRUMENTATION);
+            String slowCallSamples = getServletConfig().getInitParameter(INIT_PARAM_SLOW_CALL_SAMPLES);
+            if (instrumentationClassName != null) {
+                try {
+                    Class<?> instrumentationClass = getClassLoader().loadClass(instrumentationClassName);
+                    instrumentation = (Instrumentation) instrumentationClass.getConstructor().newInstance();
+                } catch (Exception ex) {
+                    throw new Error("Error loading instrumentation " + instrumentationClassName, ex);
+                }
+            } else if (slowCallSamples != null) {
+                String responseTimeSlo = getServletConfig().getInitParameter(INIT_PARAM_RESPONSE_TIME_SLO);
+                instrumentation = new SlowCallSampler(Integer.valueOf(slowCallSamples), responseTimeSlo == null ? 0 : Long.valueOf(responseTimeSlo), SlowCallSampler.DEFAULT_WINDOW);
+            }
             accessControlOrigin = getServletConfig().getInitParameter(INIT_PARAM_ACCESS_CONTROL);
+            String responseCacheSize = getServletConfig().getInitParameter(INIT_PARAM_RESPONSE_CACHE_SIZE);
+            if (responseCacheSize != null) {
+                String responseCacheMaxBytes = getServletConfig().getInitParameter(INIT_PARAM_RESPONSE_CACHE_MAX_BYTES);
+                responseCache = createResponseCache(Integer.valueOf(responseCacheSize), responseCacheMaxBytes == null ? DEFAULT_RESPONSE_CACHE_MAX_BYTES : Long.valueOf(responseCacheMaxBytes));
+            }
+            String etagRegistrySize = getServletConfig().getInitParameter(INIT_PARAM_ETAG_REGISTRY_SIZE);
+            if (etagRegistrySize != null) {
+                etagRegistry = new EtagRegistry(Integer.valueOf(etagRegistrySize));
+            }
+            if (Boolean.valueOf(getServletConfig().getInitParameter(INIT_PARAM_REQUEST_COALESCING))) {
+                singleFlight = new SingleFlight<byte[]>();
+            }
+            String compressionThresholdString = getServletConfig().getInitParameter(INIT_PARAM_COMPRESSION_THRESHOLD);
+            if (compressionThresholdString != null) {
+                compressionThreshold = Integer.valueOf(compressionThresholdString);
+            }
+            if (compressionThreshold >= 0) {
+                deflaterPool = new DeflaterPool(2 * Runtime.getRuntime().availableProcessors(), Deflater.DEFAULT_COMPRESSION);
+            }
+            String maxRequestSizeString = getServletConfig().getInitParameter(INIT_PARAM_MAX_REQUEST_SIZE);
+            if (maxRequestSizeString != null) {
+                maxRequestSize = Integer.valueOf(maxRequestSizeString);
+            }
+            String batchThreads = getServletConfig().getInitParameter(INIT_PARAM_BATCH_THREADS);
+            if (batchThreads != null && Integer.valueOf(batchThreads) > 0) {
+                int threads = Integer.valueOf(batchThreads);
+                // Bounded queue. When full, items are executed by the request thread
+                batchExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads * 16), new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+            String asyncTimeoutString = getServletConfig().getInitParameter(INIT_PARAM_ASYNC_TIMEOUT);
+            if (asyncTimeoutString != null) {
+                asyncTimeout = Long.valueOf(asyncTimeoutString);
+            }
+            String actionExecutorString = getServletConfig().getInitParameter(INIT_PARAM_ACTION_EXECUTOR);
+            if (actionExecutorString != null) {
+                if (actionExecutorString.trim().equalsIgnoreCase("virtual")) {
+                    actionExecutor = JsonSrvUtils.newVirtualThreadExecutor();
+                    if (actionExecutor == null) {
+                        LOGGER.warning("Virtual threads are not supported by the running JVM. Using a thread pool of unbounded size instead");
+                        actionExecutor = Executors.newCachedThreadPool();
+                    }
+                } else {
+                    actionExecutor = Executors.newFixedThreadPool(Integer.valueOf(actionExecutorString.trim()));
+                }
+                String maxConcurrencyString = getServletConfig().getInitParameter(INIT_PARAM_SERVICE_MAX_CONCURRENCY);
+                if (maxConcurrencyString != null) {
+                    serviceMaxConcurrency = Integer.valueOf(maxConcurrencyString);
+                }
+            }
+            String initThreadsString = getServletConfig().getInitParameter(INIT_PARAM_INIT_THREADS);
+            if (initThreadsString != null) {
+                initThreads = Integer.valueOf(initThreadsString);
+            }
+            lazyInit = Boolean.valueOf(getServletConfig().getInitParameter(INIT_PARAM_LAZY_INIT));
+            String reloadIntervalString = getServletConfig().getInitParameter(INIT_PARAM_RELOAD_INTERVAL);
+            if (reloadIntervalString != null && Long.valueOf(reloadIntervalString) > 0) {
+                mappingsFingerprint = getMappingsFingerprint();
+            }
+            serviceTable = createServiceTable(null);
+            if (mappingsFingerprint != null) {
+                long reloadInterval = Long.valueOf(reloadIntervalString);
+                reloadScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "jsonsrv-reload");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+                reloadScheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            String fingerprint = getMappingsFingerprint();
+                            if (!fingerprint.equals(mappingsFingerprint)) {
+                                // Updated before reloading, so a broken mapping is reported once
+                                mappingsFingerprint = fingerprint;
+                                reload();
+                            }
+                        } catch (Throwable th) {
+                            LOGGER.log(Level.SEVERE, "Error reloading service mappings. Previous services are kept", th);
+                        }
+                    }
+                }, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+            }
+            initialized = true;
         } catch (Exception ex) {
             Logger.getLogger(JsonServlet.class.getName()).log(Level.SEVERE, null, ex);
             throw new ServletException(ex);
+        } finally {
+            if (!initialized) {
+                destroy();
+            }
+        }
+    }
+
+    /**
+     * Loads the service mappings again and atomically replaces the current
+     * services with the new ones. Requests being processed complete with the
+     * services they started with. Metrics and cached responses of the services
+     * whose id and action class are unchanged are kept.
+     *
+     * @throws Exception if the mappings can not be loaded. In this case, the
+     * current services are kept
+     */
+    public synchronized void reload() throws Exception {
+        ServiceTable previous = this.serviceTable;
+        ServiceTable current = createServiceTable(previous);
+        this.serviceTable = current;
+        int replaced = 0;
+        for (JsonService<?, ?> service : previous.services.asMap().values()) {
+            String id = service.getId();
+            JsonService<?, ?> newService = current.services.get(id);
+            if (newService == null || newService.getAction().getClass() != service.getAction().getClass()) {
+                replaced++;
+                if (responseCache != null) {
+                    responseCache.removeAll(id + "\n");
+                }
+                if (etagRegistry != null) {
+                    etagRegistry.invalidate(id);
+                }
+                if (instrumentation instanceof SlowCallSampler) {
+                    ((SlowCallSampler) instrumentation).remove(id);
+                }
+                if (metrics != null) {
+                    metrics.remove(id);
+                    if (newService != null) {
+                        metrics.get(id);
+                    }
+                }
+            }
+        }
+        LOGGER.info("Service mappings reloaded. Services: " + current.services.size() + ", replaced or removed: " + replaced);
+    }
+
+    /**
+     * Builds the immutable service table from the current mappings, using the
+     * configured initialization threads. Semaphores of the previous services
+     * with the same id are kept.
+     */
+    @SuppressWarnings("rawtypes") // raw signature of loadActions()
+    private ServiceTable createServiceTable(ServiceTable previous) throws Exception {
+        long start = System.nanoTime();
+        Map<String, JsonAction> actions = loadActions();
+        Map<String, ServiceLimits> limits = loadLimits();
+        final String[] ids = new String[actions.size()];
+        final JsonService<?, ?>[] services = new JsonService<?, ?>[actions.size()];
+        final long[] nanos = new long[actions.size()];
+        List<Callable<Void>> initTasks = new ArrayList<Callable<Void>>();
+        int i = 0;
+        for (Map.Entry<String, JsonAction> entry : actions.entrySet()) {
+            final int index = i++;
+            final String id = entry.getKey();
+            final JsonAction<?, ?> action = entry.getValue();
+            ids[index] = id;
+            Callable<Void> task = new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    long serviceStart = System.nanoTime();
+                    services[index] = new JsonService<Object, Object>(id, action, bindingsEnabled, lazyInit);
+                    nanos[index] = System.nanoTime() - serviceStart;
+                    return null;
+                }
+            };
+            if (initThreads <= 1) {
+                task.call();
+            } else {
+                initTasks.add(task);
+            }
+        }
+        if (!initTasks.isEmpty()) {
+            ExecutorService initExecutor = Executors.newFixedThreadPool(Math.min(initThreads, initTasks.size()));
+            try {
+                // invokeAll() waits for all the tasks, so their results are visible from here
+                for (Future<Void> future : initExecutor.invokeAll(initTasks)) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException ex) {
+                        if (ex.getCause() instanceof Error) {
+                            throw (Error) ex.getCause();
+                        }
+                        throw (Exception) ex.getCause();
+                    }
+                }
+            } finally {
+                initExecutor.shutdown();
+            }
+        }
+        Map<String, JsonService<?, ?>> serviceMap = new LinkedHashMap<String, JsonService<?, ?>>();
+        Map<String, Semaphore> semaphores = new HashMap<String, Semaphore>();
+        Map<String, Bulkhead> bulkheads = new HashMap<String, Bulkhead>();
+        for (i = 0; i < services.length; i++) {
+            String id = ids[i];
+            serviceMap.put(id, services[i]);
+            ServiceLimits serviceLimits = limits.get(id);
+            if (serviceLimits != null && serviceLimits.getMaxConcurrency() > 0) {
+                Bulkhead bulkhead = previous != null ? previous.bulkheads.get(id) : null;
+                if (bulkhead == null || bulkhead.getMaxConcurrency() != serviceLimits.getMaxConcurrency() || bulkhead.getMaxQueueSize() != serviceLimits.getMaxQueueSize() || bulkhead.getQueueTimeout() != serviceLimits.getQueueTimeout() || bulkhead.isAdaptive() != serviceLimits.isAdaptive()) {
+                    bulkhead = new Bulkhead(serviceLimits.getMaxConcurrency(), serviceLimits.getMaxQueueSize(), serviceLimits.getQueueTimeout(), serviceLimits.isAdaptive());
+                }
+                bulkheads.put(id, bulkhead);
+            }
+            if (serviceMaxConcurrency > 0) {
+                Semaphore semaphore = previous != null ? previous.semaphores.get(id) : null;
+                semaphores.put(id, semaphore != null ? semaphore : new Semaphore(serviceMaxConcurrency));
+            }
+            if (metrics != null) {
+                metrics.get(id);
+            }
+        }
+        ServiceTable ret = new ServiceTable(new DispatchTable<JsonService<?, ?>>(serviceMap), semaphores, bulkheads);
+        if (!lazyInit) {
+            ret.getServicesPayload();
+        }
+        logInitReport(ids, nanos, System.nanoTime() - start);
+        return ret;
+    }
+
+    /**
+     * Logs the time spent initializing the services: total, and slowest
+     * services (all of them at FINE level).
+     */
+    private void logInitReport(final String[] ids, final long[] nanos, long totalNanos) {
+        Integer[] order = new Integer[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return nanos[o1] < nanos[o2] ? 1 : (nanos[o1] == nanos[o2] ? 0 : -1);
+            }
+        });
+        boolean fine = LOGGER.isLoggable(Level.FINE);
+        int lines = fine ? order.length : Math.min(order.length, INIT_REPORT_SIZE);
+        StringBuilder sb = new StringBuilder();
+        sb.append(ids.length).append(" services initialized in ").append(totalNanos / 1000000).append(" ms (").append(lazyInit ? "lazy" : "eager").append(", ").append(Math.max(initThreads, 1)).append(" threads)");
+        if (lines > 0) {
+            sb.append(lines == order.length ? ". Time per service:" : ". Slowest services:");
+            for (int i = 0; i < lines; i++) {
+                sb.append("\n\t").append(ids[order[i]]).append(": ").append(nanos[order[i]] / 1000).append(" us");
+            }
+        }
+        LOGGER.info(sb.toString());
+    }
+
+    /**
+     * Returns a digest of the contents of the mapping resources, used to detect
+     * their modification.
+     */
+    private String getMappingsFingerprint() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (URL url : getMappingResources()) {
+            baos.write(url.toString().getBytes("UTF-8"));
+            URLConnection conn = url.openConnection();
+            conn.setUseCaches(false);
+            InputStream is = conn.getInputStream();
+            try {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    baos.write(buffer, 0, read);
+                }
+            } finally {
+                is.close();
+            }
+        }
+        return JsonSrvUtils.md5Hex(baos.toByteArray());
+    }
+
+    @Override
+    public void destroy() {
+        if (reloadScheduler != null) {
+            reloadScheduler.shutdownNow();
+        }
+        if (batchExecutor != null) {
+            batchExecutor.shutdown();
+        }
+        if (actionExecutor != null) {
+            actionExecutor.shutdown();
+        }
+        if (metrics != null) {
+            metrics.unregisterMBean();
+        }
+        if (responseCache instanceof Closeable) {
+            try {
+                ((Closeable) responseCache).close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Error closing response cache", ex);
+            }
+        }
+        super.destroy();
+    }
+
+    private ResponseCache createResponseCache(int maxEntries, long maxBytes) throws ServletException, IOException {
+        String type = getServletConfig().getInitParameter(INIT_PARAM_RESPONSE_CACHE_TYPE);
+        if (type == null || type.equals(RESPONSE_CACHE_TYPE_HEAP)) {
+            return new HeapResponseCache(maxEntries, maxBytes);
+        } else if (type.equals(RESPONSE_CACHE_TYPE_OFF_HEAP)) {
+            return new OffHeapResponseCache(maxEntries, maxBytes);
+        } else if (type.equals(RESPONSE_CACHE_TYPE_MAPPED)) {
+            String file = getServletConfig().getInitParameter(INIT_PARAM_RESPONSE_CACHE_FILE);
+            if (file == null) {
+                throw new ServletException("Init-param '" + INIT_PARAM_RESPONSE_CACHE_FILE + "' is required for response cache type '" + type + "'");
+            }
+            return new MappedFileResponseCache(new File(file), maxEntries, maxBytes);
+        } else {
+            throw new ServletException("Unsupported response cache type '" + type + "'. Supported values are: " + RESPONSE_CACHE_TYPE_HEAP + ", " + RESPONSE_CACHE_TYPE_OFF_HEAP + ", " + RESPONSE_CACHE_TYPE_MAPPED);
         }
     }
 
@@ -144,76 +586,105 @@ public class JsonServlet extends HttpServlet {
      */
     private void execute(HttpServletRequest req, HttpServletResponse resp) throws IOException {
 
-        String reqETag;
+        String ifNoneMatch;
         if (req.getMethod().equals("POST")) {
             // 304 (Not Modified) cannot be returned to a POST request. So If-None-Match is ignored, despite of not being present in a HTTP 1.1 compliant POST request
-            reqETag = null;
+            ifNoneMatch = null;
         } else {
-            reqETag = req.getHeader("If-None-Match");
-            if (reqETag != null && reqETag.startsWith("W/\"")) {
-                reqETag = reqETag.substring(3, reqETag.length() - 1);
-            }
+            ifNoneMatch = req.getHeader("If-None-Match");
         }
         resp.addHeader("X-Powered-By", "jsonsrv");
         if (accessControlOrigin != null) {
             resp.addHeader("Access-Control-Allow-Origin", accessControlOrigin);
         }
-        JsonService service = null;
+        String batchStr = req.getParameter(PARAM_BATCH);
+        if (batchStr != null) {
+            executeBatch(req, resp, batchStr);
+            return;
+        }
+        ServiceTable table = serviceTable;
+        JsonService<?, ?> service = null;
         String id = req.getParameter(PARAM_ID);
         String schemaParam = req.getParameter(PARAM_SCHEMA);
         if (schemaParameterDisabled) {
             schemaParam = null;
         }
         resp.setContentType("application/json");
-        JsonResponse jsonResponse = null;
-        String json;
+        resp.setCharacterEncoding("UTF-8");
+        JsonResponse<Object> jsonResponse = null;
+        JsonPayload json;
         CachingInfo cachingInfo = null;
         SchemaMode schemaMode = null;
+        ServiceResult reusableResult = null;
+        CallTrace trace = null;
         try {
             if (schemaParam == null) {
                 schemaMode = null;
             } else {
-                try {
-                    schemaMode = SchemaMode.valueOf(schemaParam.trim().toUpperCase());
-                } catch (Exception e) {
+                schemaMode = SchemaMode.parse(schemaParam);
+                if (schemaMode == null) {
                     throw new IllegalAccessException("Invalid schema parameter value. Supported values are: " + Miscellaneous.arrayToString(SchemaMode.values()));
                 }
             }
             if (id == null) {
                 if (schemaMode == SchemaMode.I) {
-                    json = "";
+                    json = EMPTY_PAYLOAD;
                 } else if (schemaMode == SchemaMode.O) {
                     // service listing output schema
-                    json = this.stringArraySchema;
+                    json = stringArraySchemaPayload;
                 } else {
-                    jsonResponse = listServices();
-                    json = JsonCodec.getInstance().transform(jsonResponse);
+                    json = table.getServicesPayload();
+                    jsonResponse = table.servicesResponse;
                 }
             } else {
-                service = services.get(id);
+                service = table.services.get(id);
                 if (service == null) {
-                    jsonResponse = new JsonResponse();
+                    jsonResponse = new JsonResponse<Object>();
                     jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.serviceNotFound));
-                    json = JsonCodec.getInstance().transform(jsonResponse);
+                    json = JsonPayload.valueOf(jsonResponse);
                 } else {
                     if (schemaMode == SchemaMode.I) {
-                        json = service.getInputSchema();
+                        json = service.getInputSchemaPayload();
                     } else if (schemaMode == SchemaMode.O) {
-                        json = service.getOutputSchema();
+                        json = service.getOutputSchemaPayload();
                     } else {
                         if (service.getAction() instanceof UnsafeAction && req.getMethod().equals("GET")) {
-                            jsonResponse = new JsonResponse();
+                            jsonResponse = new JsonResponse<Object>();
                             jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.invalidMethodError));
-                            json = JsonCodec.getInstance().transform(jsonResponse);
+                            json = JsonPayload.valueOf(jsonResponse);
                         } else {
-                            String inputStr = req.getParameter(PARAM_INPUT);
                             prepareActionContext(req, resp);
                             try {
-                                Pair<JsonResponse, CachingInfo> result = executeService(service, inputStr, reqETag);
-                                jsonResponse = result.getElement1();
-                                cachingInfo = result.getElement2();
-                                if (jsonResponse != null) {
-                                    json = JsonCodec.getInstance().transform(jsonResponse);
+                                ServiceResult result;
+                                try {
+                                    reusableResult = ServiceResult.acquire();
+                                    if (instrumentation != null) {
+                                        trace = new CallTrace(id);
+                                        reusableResult.setTrace(trace);
+                                        instrumentation.beginCall(trace);
+                                    }
+                                    String inputStr = readInput(req);
+                                    if (trace != null && inputStr != null) {
+                                        trace.setInputSize(inputStr.length());
+                                    }
+                                    result = executeService(table, reusableResult, service, inputStr, ifNoneMatch, req.isAsyncSupported());
+                                } catch (ParseException ex) {
+                                    result = ServiceResult.parseError(ex);
+                                } catch (RequestTooLargeException ex) {
+                                    result = ServiceResult.error(JsonResponse.Error.requestTooLargeError);
+                                }
+                                if (result.getPending() != null) {
+                                    // the result is now owned by the asynchronous processing
+                                    ServiceResult.detach(result);
+                                    startAsync(req, resp, service, result);
+                                    return;
+                                }
+                                jsonResponse = result.getResponse();
+                                cachingInfo = result.getCachingInfo();
+                                if (result.getPayload() != null) {
+                                    json = result.getPayload();
+                                } else if (jsonResponse != null) {
+                                    json = JsonPayload.valueOf(jsonResponse, service);
                                 } else {
                                     json = null;
                                 }
@@ -225,11 +696,32 @@ public class JsonServlet extends HttpServlet {
                 }
             }
         } catch (Exception ex) {
-            jsonResponse = new JsonResponse();
+            jsonResponse = new JsonResponse<Object>();
             jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.internalError, Miscellaneous.getRootCauseMessage(ex)));
-            json = JsonCodec.getInstance().transform(jsonResponse);
+            json = JsonPayload.valueOf(jsonResponse);
             Logger.getLogger(JsonServlet.class.getName()).log(Level.SEVERE, null, ex);
         }
+        try {
+            render(req, resp, jsonResponse, json, cachingInfo, schemaMode, service, trace);
+        } finally {
+            if (trace != null) {
+                endCall(trace, jsonResponse, json);
+            }
+            if (reusableResult != null) {
+                reusableResult.reset();
+            }
+        }
+    }
+
+    /**
+     * Sets the status code and caching headers of the response, and delegates
+     * the payload rendering to the renderer.
+     *
+     * @param json null means not-modified
+     */
+    private void render(HttpServletRequest req, HttpServletResponse resp, JsonResponse<Object> jsonResponse, JsonPayload json, CachingInfo cachingInfo, SchemaMode schemaMode, JsonService<?, ?> service, CallTrace trace) throws IOException {
+        ServiceMetrics serviceMetrics = schemaMode == null ? getServiceMetrics(service) : ServiceMetrics.DISABLED;
+        serviceMetrics.recordCall(jsonResponse != null && jsonResponse.getError() != null ? JsonResponse.Error.valueOf(jsonResponse.getError().getCode()) : null, json == null);
         if (jsonResponse != null && jsonResponse.getError() != null) {
             if (jsonResponse.getError().getCode() == JsonResponse.Error.internalError.getCode()) {
                 cachingInfo = null;
@@ -245,29 +737,130 @@ public class JsonServlet extends HttpServlet {
             } else if (jsonResponse.getError().getCode() == JsonResponse.Error.invalidMethodError.getCode()) {
                 cachingInfo = null;
                 resp.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            } else if (jsonResponse.getError().getCode() == JsonResponse.Error.timeoutError.getCode()) {
+                cachingInfo = null;
+                resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            } else if (jsonResponse.getError().getCode() == JsonResponse.Error.overloadError.getCode()) {
+                cachingInfo = null;
+                resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                resp.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+            } else if (jsonResponse.getError().getCode() == JsonResponse.Error.requestTooLargeError.getCode()) {
+                cachingInfo = null;
+                resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
             } else {
                 cachingInfo = null;
                 resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             }
         }
-        if (cachingInfo == null) {
+        if (cachingInfo == null && json != null && json.getEtag() != null && (jsonResponse == null || jsonResponse.getError() == null)) {
+            // static payload
+            addStaticCacheHeaders(req, resp, json.getEtag());
+            String matchingEtag = req.getMethod().equals("POST") ? null : JsonSrvUtils.getMatchingEtag(req.getHeader("If-None-Match"), json.getEtag());
+            if (matchingEtag != null) {
+                if (!matchingEtag.equals("*")) {
+                    // Validator of the representation cached by the client
+                    resp.setHeader("ETag", matchingEtag);
+                }
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        } else if (cachingInfo == null) {
             addNoCacheHeaders(req, resp);
-            renderer.service(getServletConfig(), req, resp, json, schemaMode, service);
         } else if (cachingInfo instanceof ConditionalCachingInfo) {
             ConditionalCachingInfo cc = (ConditionalCachingInfo) cachingInfo;
-            addConditionalCacheHeaders(req, resp, cc.getEtag());
-            if (json != null) {
-                renderer.service(getServletConfig(), req, resp, json, schemaMode, service);
-            } else {
+            addConditionalCacheHeaders(req, resp, service, cc.getEtag());
+            if (json == null) {
                 resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
             }
         } else if (cachingInfo instanceof ExpiringCachingInfo) {
             ExpiringCachingInfo ec = (ExpiringCachingInfo) cachingInfo;
-            addExpiresCacheHeaders(req, resp, ec.getMaxAge());
-            renderer.service(getServletConfig(), req, resp, json, schemaMode, service);
+            addExpiresCacheHeaders(req, resp, service, ec.getMaxAge());
         } else {
             throw new AssertionError();
         }
+        json = encodable(json);
+        long start = beginPhase(trace, Phase.RENDER);
+        renderer.service(getServletConfig(), req, resp, json, schemaMode, service);
+        endPhase(serviceMetrics, trace, Phase.RENDER, start);
+    }
+
+    /**
+     * Notifies the instrumentation of the beginning of a phase, if the call is
+     * traced.
+     *
+     * @return start time of the phase
+     */
+    private long beginPhase(CallTrace trace, Phase phase) {
+        if (trace != null) {
+            instrumentation.beginPhase(trace, phase);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the duration of a phase in the service metrics and, if the call
+     * is traced, in its trace.
+     */
+    private void endPhase(ServiceMetrics serviceMetrics, CallTrace trace, Phase phase, long start) {
+        long nanos = System.nanoTime() - start;
+        serviceMetrics.record(phase, nanos);
+        if (trace != null) {
+            trace.record(phase, nanos);
+            instrumentation.endPhase(trace, phase, nanos);
+        }
+    }
+
+    private void endCall(CallTrace trace, JsonResponse<Object> jsonResponse, JsonPayload json) {
+        trace.end(jsonResponse != null && jsonResponse.getError() != null ? Integer.valueOf(jsonResponse.getError().getCode()) : null, json == null);
+        instrumentation.endCall(trace);
+    }
+
+    /**
+     * Wraps a payload, unless streamed, so that it is compressed when large
+     * enough (see {@link EncodablePayload}).
+     */
+    private JsonPayload encodable(JsonPayload json) {
+        if (json == null || json instanceof EncodablePayload || json.isStreaming()) {
+            return json;
+        }
+        return new EncodablePayload(json, null, null);
+    }
+
+    /**
+     * Returns the payload of a body stored in the response cache (if key is
+     * not null), able to serve its compressed variants.
+     */
+    private JsonPayload cachedPayload(String cacheKey, byte[] body) {
+        if (deflaterPool == null) {
+            return JsonPayload.valueOf(body);
+        }
+        return new EncodablePayload(null, body, cacheKey);
+    }
+
+    private ServiceMetrics getServiceMetrics(JsonService<?, ?> service) {
+        if (metrics == null || service == null) {
+            return ServiceMetrics.DISABLED;
+        }
+        return metrics.get(service.getId());
+    }
+
+    /**
+     * Returns the metrics of the services, or {@code null} if metrics are
+     * disabled.
+     *
+     * @return
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the instrumentation of the service calls, or {@code null} if not
+     * configured
+     */
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
     }
 
     private void addNoCacheHeaders(HttpServletRequest req, HttpServletResponse resp) {
@@ -276,39 +869,38 @@ public class JsonServlet extends HttpServlet {
         resp.addHeader("Pragma", "no-cache");
     }
 
-    private void addConditionalCacheHeaders(HttpServletRequest req, HttpServletResponse resp, String etag) {
+    private void addStaticCacheHeaders(HttpServletRequest req, HttpServletResponse resp, String etag) {
+        resp.addDateHeader("Expires", 0);
+        resp.addHeader("Cache-Control", "private, no-cache");
+        resp.setHeader("ETag", etag);
+    }
+
+    private void addConditionalCacheHeaders(HttpServletRequest req, HttpServletResponse resp, JsonService<?, ?> service, String etag) {
         resp.addDateHeader("Expires", 0);
         resp.addHeader("Cache-Control", "private, must-revalidate");
-        resp.setHeader("ETag", "W/\"" + etag + "\"");
-        if (req.getMethod().equals("POST")) {
+        resp.setHeader("ETag", service.getWeakEtagHeader(etag));
+        if (req.getMethod().equals("POST") && !hasBodyInput(req)) {
             addContentLocation(req, resp);
         }
     }
 
-    private void addExpiresCacheHeaders(HttpServletRequest req, HttpServletResponse resp, int maxAge) {
+    private void addExpiresCacheHeaders(HttpServletRequest req, HttpServletResponse resp, JsonService<?, ?> service, int maxAge) {
         // max-age overrides expires. For legacy proxies (intermedy) cache control is ignored and no cache is performed, the desired behaviour for a private cache. See http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.9.3
         resp.addDateHeader("Expires", 0);
-        resp.addHeader("Cache-Control", "max-age=" + maxAge + ", private, must-revalidate");
-        if (req.getMethod().equals("POST")) {
+        resp.addHeader("Cache-Control", service.getExpiringCacheControlHeader(maxAge));
+        if (req.getMethod().equals("POST") && !hasBodyInput(req)) {
             addContentLocation(req, resp);
         }
     }
 
-    private static void prepareActionContext(final HttpServletRequest req, final HttpServletResponse resp) {
-        JsonActionContext.setInstance(new JsonActionContext() {
-            @Override
-            public Object getRequest() {
-                return req;
-            }
-
-            @Override
-            public Object getResponse() {
-                return resp;
-            }
-        });
+    private void prepareActionContext(HttpServletRequest req, HttpServletResponse resp) {
+        RequestContext context = RequestContext.REUSABLE.get();
+        context.set(this, req, resp);
+        JsonActionContext.setInstance(context);
     }
 
     private static void clearActionContext() {
+        RequestContext.REUSABLE.get().set(null, null, null);
         JsonActionContext.clear();
     }
 
@@ -322,116 +914,658 @@ public class JsonServlet extends HttpServlet {
                 .getClassLoader();
     }
 
+    /**
+     * Returns the resources holding the service mappings, watched for changes
+     * when the <code>reload-interval</code> init-param is set.
+     *
+     * @return
+     * @throws IOException
+     */
+    protected List<URL> getMappingResources() throws IOException {
+        return Collections.list(getClassLoader().getResources("jsonsrv.json"));
+    }
+
+    @SuppressWarnings("rawtypes") // raw signature kept for the subclasses overriding it
     protected Map<String, JsonAction> loadActions() throws Exception {
-        Map<String, JsonAction> ret = new LinkedHashMap();
+        Map<String, JsonAction> ret = new LinkedHashMap<String, JsonAction>();
+        for (ActionMapping am : loadMappings()) {
+            if (ret.containsKey(am.getId())) {
+                throw new Error("Duplicated mapping found with id " + am.getId());
+            }
+            Class<?> clazz = getClassLoader().loadClass(am.getClassName());
+            if (!JsonAction.class.isAssignableFrom(clazz)) {
+                throw new Error("Invalid action class found: " + am.getClassName());
+            }
+            JsonAction instance = (JsonAction) clazz.getConstructor().newInstance();
+            ret.put(am.getId(), instance);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the bulkhead configuration of the services, by service id.
+     * Invoked after {@link #loadActions()}.
+     *
+     * @return
+     * @throws Exception
+     */
+    protected Map<String, ServiceLimits> loadLimits() throws Exception {
+        Map<String, ServiceLimits> ret = new HashMap<String, ServiceLimits>();
+        for (ActionMapping am : loadMappings()) {
+            ServiceLimits limits = am.toLimits();
+            if (limits != null) {
+                ret.put(am.getId(), limits);
+            }
+        }
+        return ret;
+    }
+
+    private List<ActionMapping> loadMappings() throws Exception {
+        List<ActionMapping> ret = new ArrayList<ActionMapping>();
         Enumeration<URL> urls = getClassLoader().getResources("jsonsrv.json");
         while (urls.hasMoreElements()) {
             URL url = urls.nextElement();
             String fileContents = Miscellaneous.toString(url.openStream(), "UTF-8");
             ActionMapping[] ams = JsonCodec.getInstance().parse(fileContents, ActionMapping[].class);
-            if (ams
-                    != null) {
-                for (int i = 0; i < ams.length; i++) {
-                    ActionMapping am = ams[i];
-                    if (ret.containsKey(am.getId())) {
-                        throw new Error("Duplicated mapping found with id " + am.getId());
-                    }
-                    Class clazz = getClassLoader().loadClass(am.getClassName());
-                    if (!JsonAction.class.isAssignableFrom(clazz)) {
-                        throw new Error("Invalid action class found: " + am.getClassName());
-                    }
-                    JsonAction instance = (JsonAction) clazz.newInstance();
-                    ret.put(am.getId(), instance);
-                }
+            if (ams != null) {
+                ret.addAll(Arrays.asList(ams));
             }
         }
         return ret;
     }
 
-    private String loadDescription(JsonAction action) throws IOException {
-        String name = action.getClass().getName().replace(".", "/") + ".md";
-        InputStream is = action.getClass().getClassLoader().getResourceAsStream(name);
-        if (is == null) {
-            LOGGER.warning("Could not find service description resource '" + name + "'. Consider creating it in markdown format for better service maintainability");
-            return null;
+    /**
+     * Returns the cache used to store responses of safe actions, or
+     * {@code null} if server-side caching is disabled.
+     *
+     * @return
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Returns the registry of the etags of safe actions, letting applications
+     * invalidate them when the underlying data changes, or {@code null} if
+     * disabled. Actions can access it by casting
+     * <code>JsonActionContext.getInstance().getServlet()</code>.
+     *
+     * @return
+     */
+    public EtagRegistry getEtagRegistry() {
+        return etagRegistry;
+    }
+
+    /**
+     * Returns the number of safe action executions saved by request
+     * coalescing, that is, requests that were served with the result of an
+     * identical concurrent request.
+     *
+     * @return
+     */
+    public long getCoalescedCalls() {
+        return singleFlight == null ? 0 : singleFlight.getCollapsed() + coalescedSubmissions.get();
+    }
+
+    /**
+     * Returns the JSON input of the request: the body for
+     * <code>application/json</code> requests, the CBOR body transcoded to JSON
+     * for <code>application/cbor</code> requests, or the <code>input</code>
+     * parameter otherwise.
+     */
+    private String readInput(HttpServletRequest req) throws IOException, ParseException, RequestTooLargeException {
+        if (hasBodyInput(req)) {
+            if (req.getContentType().toLowerCase().startsWith(JSON_MEDIA_TYPE)) {
+                ByteArrayOutputStream body = readBody(req);
+                // Decoded from the internal buffer of the stream, skipping the byte array copy of toByteArray()
+                return body.size() == 0 ? null : body.toString("UTF-8");
+            } else {
+                ByteArrayOutputStream body = readBody(req);
+                return body.size() == 0 ? null : Cbor.toJson(body.toByteArray());
+            }
+        }
+        return req.getParameter(PARAM_INPUT);
+    }
+
+    /**
+     * @return whether the input of the request is read from its body (a
+     * <code>POST</code> request with a JSON or CBOR content type) instead of
+     * the <code>input</code> parameter
+     */
+    private static boolean hasBodyInput(HttpServletRequest req) {
+        String contentType = req.getContentType();
+        if (contentType == null || !req.getMethod().equals("POST")) {
+            return false;
         }
-        return Miscellaneous.toString(is, "UTF-8");
+        contentType = contentType.toLowerCase();
+        return contentType.startsWith(JSON_MEDIA_TYPE) || contentType.startsWith(Cbor.MEDIA_TYPE);
     }
 
-    private JsonResponse listServices() {
-        return servicesResponse;
+    /**
+     * Reads the request body, failing as soon as it is known to exceed the
+     * maximum size allowed.
+     */
+    private ByteArrayOutputStream readBody(HttpServletRequest req) throws IOException, RequestTooLargeException {
+        int contentLength = req.getContentLength();
+        if (contentLength > maxRequestSize) {
+            throw new RequestTooLargeException();
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(contentLength > 0 ? contentLength : 256);
+        InputStream is = req.getInputStream();
+        byte[] buffer = new byte[Math.min(8 * 1024, maxRequestSize + 1)];
+        int n;
+        while ((n = is.read(buffer)) >= 0) {
+            if (baos.size() + n > maxRequestSize) {
+                throw new RequestTooLargeException();
+            }
+            baos.write(buffer, 0, n);
+        }
+        return baos;
+    }
+
+    private ServiceResult executeService(ServiceTable table, ServiceResult ret, JsonService<?, ?> service, String inputStr, String ifNoneMatch, boolean asyncSupported) {
+        String rawKey = null;
+        if (etagRegistry != null && inputStr != null && service != null && service.getAction() instanceof SafeAction) {
+            String rawInputKey = ((SafeAction<?, ?>) service.getAction()).getRawInputKey(inputStr);
+            if (rawInputKey != null) {
+                rawKey = service.getId() + "\n#" + rawInputKey;
+                ConditionalCachingInfo cachingInfo = ifNoneMatch == null ? null : etagRegistry.get(rawKey);
+                if (cachingInfo != null && JsonSrvUtils.matchesWeakEtag(ifNoneMatch, cachingInfo.getEtag())) {
+                    // Not modified, without parsing the input
+                    ret.setCachingInfo(cachingInfo);
+                    ret.setResponse(null);
+                    return ret;
+                }
+            }
+        }
+        JsonNode inputNode;
+        try {
+            long start = beginPhase(ret.getTrace(), Phase.PARSE);
+            inputNode = inputStr == null ? null : JsonCodec.getInstance().parse(inputStr);
+            endPhase(getServiceMetrics(service), ret.getTrace(), Phase.PARSE, start);
+        } catch (ParseException ex) {
+            return ServiceResult.parseError(ex);
+        }
+        return executeService(table, ret, service, inputNode, rawKey, ifNoneMatch, asyncSupported);
     }
 
     /**
      * jsonresponse = null means not-modified
+     *
+     * @param table services snapshot taken at the start of the request, whose
+     * concurrency limits apply
+     * @param ret result to fill, with an empty response envelope
+     * @param rawKey registry key of the raw input, to bind the etag to
+     * @param ifNoneMatch value of the <code>If-None-Match</code> request header
+     * @param asyncSupported if true, asynchronous actions are not waited for,
+     * and the returned result is pending
      */
-    private Pair<JsonResponse, CachingInfo> executeService(JsonService service, String inputStr, String etag) {
-        Pair<JsonResponse, CachingInfo> ret = new Pair();
-        JsonResponse jsonResponse = new JsonResponse();
-        ret.setElement1(jsonResponse);
+    private ServiceResult executeService(ServiceTable table, ServiceResult ret, final JsonService<?, ?> service, JsonNode inputNode, String rawKey, String ifNoneMatch, boolean asyncSupported) {
+        JsonResponse<Object> jsonResponse = ret.getResponse();
         if (service == null) {
             jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.serviceNotFound));
             return ret;
         }
-        JsonAction action = service.getAction();
+        final JsonAction<Object, Object> action = getAction(service);
+        final ServiceMetrics serviceMetrics = getServiceMetrics(service);
         Object input;
-
-        if (inputStr == null) {
-            input = null;
-        } else {
-            try {
-                service.getValidationInputSchema().validate(JsonCodec.getInstance().parse(inputStr));
-                input = JsonCodec.getInstance().parse(inputStr, service.getInputClass());
-            } catch (ParseException ex) {
-                jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.parseError, Miscellaneous.getRootCauseMessage(ex)));
-                return ret;
-            } catch (ValidationException vex) {
-                jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.invalidInput, vex.getMessages()));
-                return ret;
-            }
+        try {
+            long start = beginPhase(ret.getTrace(), Phase.VALIDATE);
+            input = service.loadInput(inputNode);
+            endPhase(serviceMetrics, ret.getTrace(), Phase.VALIDATE, start);
+        } catch (ValidationException vex) {
+            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.invalidInput, vex.getMessages()));
+            return ret;
         }
         try {
             boolean execute = true;
+            String cacheKey = null;
             if (action instanceof SafeAction) {
-                CachingInfo cachingInfo = ((SafeAction) action).getCachingInfo(input);
-                ret.setElement2(cachingInfo);
-                if (etag != null && cachingInfo != null) {
+                String key = null;
+                CachingInfo cachingInfo = null;
+                if (etagRegistry != null) {
+                    key = getCacheKey(service, input, inputNode);
+                    cachingInfo = etagRegistry.get(key);
+                }
+                if (cachingInfo == null) {
+                    long start = beginPhase(ret.getTrace(), Phase.CACHING_INFO);
+                    cachingInfo = ((SafeAction<Object, Object>) action).getCachingInfo(input);
+                    endPhase(serviceMetrics, ret.getTrace(), Phase.CACHING_INFO, start);
+                    if (key != null && cachingInfo instanceof ConditionalCachingInfo) {
+                        etagRegistry.put(key, (ConditionalCachingInfo) cachingInfo);
+                    }
+                }
+                if (rawKey != null && cachingInfo instanceof ConditionalCachingInfo && ((ConditionalCachingInfo) cachingInfo).getEtagTtl() > 0) {
+                    etagRegistry.putAlias(rawKey, key);
+                }
+                ret.setCachingInfo(cachingInfo);
+                if (ifNoneMatch != null && cachingInfo != null) {
                     if (cachingInfo instanceof ConditionalCachingInfo) {
                         ConditionalCachingInfo conditionalCaching = (ConditionalCachingInfo) cachingInfo;
-                        if (conditionalCaching.getEtag().equals(etag)) {
+                        if (JsonSrvUtils.matchesWeakEtag(ifNoneMatch, conditionalCaching.getEtag())) {
                             execute = false;
-                            ret.setElement1(null);
+                            ret.setResponse(null);
                         }
                     }
                 }
+                // Streamed outputs are never materialized
+                if (execute && responseCache != null && cachingInfo != null && !(action instanceof StreamingSafeAction)) {
+                    cacheKey = key != null ? key : getCacheKey(service, input, inputNode);
+                    byte[] cached = responseCache.get(cacheKey, cachingInfo);
+                    if (cached != null) {
+                        execute = false;
+                        ret.setPayload(cachedPayload(cacheKey, cached));
+                    }
+                }
             }
             if (execute) {
-                Object output = action.execute(input);
-                jsonResponse.setValue(output);
+                final Bulkhead bulkhead = table.bulkheads.get(service.getId());
+                if (bulkhead != null) {
+                    boolean acquired;
+                    try {
+                        acquired = bulkhead.acquire();
+                    } catch (InterruptedException ex) {
+                        // Rejected, keeping the interruption for the container
+                        Thread.currentThread().interrupt();
+                        acquired = false;
+                    }
+                    if (!acquired) {
+                        jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.overloadError));
+                        return ret;
+                    }
+                }
+                final long executionStart = System.nanoTime();
+                boolean released = bulkhead == null;
+                try {
+                    executeAction(table, ret, service, input, inputNode, cacheKey, asyncSupported);
+                    if (ret.getPending() != null && bulkhead != null) {
+                        released = true;
+                        ret.getPending().addListener(new Runnable() {
+                            @Override
+                            public void run() {
+                                bulkhead.release(System.nanoTime() - executionStart);
+                            }
+                        });
+                    }
+                } finally {
+                    if (!released) {
+                        bulkhead.release(System.nanoTime() - executionStart);
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            setExecutionError(jsonResponse, ex);
+        }
+        return ret;
+    }
+
+    /**
+     * Executes the action (or starts its execution, leaving the result
+     * pending), storing the response in the server-side cache if a cache key
+     * is given.
+     */
+    private void executeAction(ServiceTable table, ServiceResult ret, final JsonService<?, ?> service, Object input, JsonNode inputNode, String cacheKey, boolean asyncSupported) throws Exception {
+        JsonResponse<Object> jsonResponse = ret.getResponse();
+        final JsonAction<Object, Object> action = getAction(service);
+        final ServiceMetrics serviceMetrics = getServiceMetrics(service);
+        final CallTrace trace = ret.getTrace();
+        long start = beginPhase(trace, Phase.EXECUTE);
+        if (asyncSupported && action instanceof AsyncAction) {
+            ret.setCacheKey(cacheKey);
+            ret.setStartNanos(start);
+            @SuppressWarnings("unchecked") // same type arguments as the action
+            AsyncAction<Object, Object> asyncAction = (AsyncAction<Object, Object>) action;
+            ret.setPending(asyncAction.executeAsync(input));
+        } else if (asyncSupported && actionExecutor != null) {
+            ActionFuture<Object> pending;
+            if (singleFlight != null && action instanceof SafeAction && !(action instanceof StreamingSafeAction)) {
+                pending = submitCoalesced(table, cacheKey != null ? cacheKey : getCacheKey(service, input, inputNode), service, input);
+            } else {
+                pending = submit(table, service, input);
+            }
+            if (pending == null) {
+                jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.overloadError));
+                return;
+            }
+            ret.setCacheKey(cacheKey);
+            ret.setStartNanos(start);
+            ret.setPending(pending);
+        } else if (singleFlight != null && action instanceof SafeAction && !(action instanceof StreamingSafeAction)) {
+            final Object actionInput = input;
+            final String storeKey = cacheKey;
+            final CachingInfo cachingInfo = ret.getCachingInfo();
+            byte[] body = singleFlight.execute(cacheKey != null ? cacheKey : getCacheKey(service, input, inputNode), new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    JsonResponse<Object> sharedResponse = new JsonResponse<Object>();
+                    sharedResponse.setValue(action.execute(actionInput));
+                    long start = beginPhase(trace, Phase.SERIALIZE);
+                    byte[] body = JsonPayload.valueOf(sharedResponse, service).toByteArray();
+                    endPhase(serviceMetrics, trace, Phase.SERIALIZE, start);
+                    if (storeKey != null) {
+                        responseCache.put(storeKey, cachingInfo, body);
+                    }
+                    return body;
+                }
+            });
+            ret.setPayload(cachedPayload(cacheKey, body));
+            endPhase(serviceMetrics, trace, Phase.EXECUTE, start);
+        } else {
+            Object output = action.execute(input);
+            endPhase(serviceMetrics, trace, Phase.EXECUTE, start);
+            jsonResponse.setValue(output);
+            if (cacheKey != null) {
+                start = beginPhase(trace, Phase.SERIALIZE);
+                byte[] body = JsonPayload.valueOf(jsonResponse, service).toByteArray();
+                endPhase(serviceMetrics, trace, Phase.SERIALIZE, start);
+                responseCache.put(cacheKey, ret.getCachingInfo(), body);
+                ret.setPayload(cachedPayload(cacheKey, body));
+            }
+        }
+    }
+
+    /**
+     * Submits a safe action to the action executor, unless an identical
+     * submission is already in progress, in which case its outcome is shared.
+     * Each caller gets its own future, so that cancelling one (on async
+     * timeout) does not affect the others.
+     *
+     * @return the pending execution, or {@code null} if the service reached
+     * its concurrency limit
+     */
+    private ActionFuture<Object> submitCoalesced(ServiceTable table, final String key, JsonService<?, ?> service, Object input) {
+        ActionFuture<Object> shared = inFlightSubmissions.get(key);
+        if (shared != null) {
+            coalescedSubmissions.incrementAndGet();
+        } else {
+            shared = submit(table, service, input);
+            if (shared == null) {
+                return null;
+            }
+            final ActionFuture<Object> execution = shared;
+            if (inFlightSubmissions.putIfAbsent(key, execution) == null) {
+                execution.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        inFlightSubmissions.remove(key, execution);
+                    }
+                });
+            }
+        }
+        final ActionFuture<Object> source = shared;
+        final ActionFuture<Object> ret = new ActionFuture<Object>();
+        source.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ret.complete(ActionFuture.await(source));
+                } catch (Throwable th) {
+                    ret.fail(th);
+                }
+            }
+        });
+        return ret;
+    }
 
+    /**
+     * Executes a blocking action in the action executor, propagating the
+     * current action context. The concurrency limit of the service is checked
+     * before submitting, so executor threads never block waiting for a permit.
+     *
+     * @return the pending execution, or {@code null} if the service reached
+     * its concurrency limit
+     */
+    private ActionFuture<Object> submit(ServiceTable table, JsonService<?, ?> service, final Object input) {
+        final JsonAction<Object, Object> action = getAction(service);
+        final Semaphore semaphore = table.semaphores.get(service.getId());
+        if (semaphore != null && !semaphore.tryAcquire()) {
+            return null;
+        }
+        final ActionFuture<Object> future = new ActionFuture<Object>();
+        try {
+            actionExecutor.execute(JsonActionContext.getInstance().wrap(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // Timed out while queued
+                        if (!future.isDone()) {
+                            future.complete(action.execute(input));
+                        }
+                    } catch (Throwable th) {
+                        future.fail(th);
+                    } finally {
+                        if (semaphore != null) {
+                            semaphore.release();
+                        }
+                    }
+                }
+            }));
+        } catch (RuntimeException ex) {
+            if (semaphore != null) {
+                semaphore.release();
             }
-        } catch (IllegalArgumentException ex) {
+            throw ex;
+        }
+        return future;
+    }
+
+    /**
+     * Maps an error thrown by the action execution to the error of the
+     * response.
+     */
+    private static void setExecutionError(JsonResponse<Object> jsonResponse, Throwable th) {
+        if (th instanceof IllegalArgumentException) {
             Logger.getLogger(JsonServlet.class
-                    .getName()).log(Level.WARNING, null, ex);
-            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.invalidInput, Miscellaneous.getRootCauseMessage(ex)));
-            return ret;
-        } catch (SecurityException ex) {
+                    .getName()).log(Level.WARNING, null, th);
+            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.invalidInput, Miscellaneous.getRootCauseMessage(th)));
+        } else if (th instanceof SecurityException) {
             Logger.getLogger(JsonServlet.class
-                    .getName()).log(Level.SEVERE, null, ex);
-            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.securityError, Miscellaneous.getRootCauseMessage(ex)));
-            return ret;
-        } catch (RuntimeException ex) {
+                    .getName()).log(Level.SEVERE, null, th);
+            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.securityError, Miscellaneous.getRootCauseMessage(th)));
+        } else if (th instanceof Exception && !(th instanceof RuntimeException)) {
             Logger.getLogger(JsonServlet.class
-                    .getName()).log(Level.SEVERE, null, ex);
-            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.internalError, Miscellaneous.getRootCauseMessage(ex)));
-            return ret;
-        } catch (Exception ex) {
+                    .getName()).log(Level.INFO, null, th);
+            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.applicationError, Miscellaneous.getRootCauseMessage(th)));
+        } else {
             Logger.getLogger(JsonServlet.class
-                    .getName()).log(Level.INFO, null, ex);
-            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.applicationError, Miscellaneous.getRootCauseMessage(ex)));
-            return ret;
+                    .getName()).log(Level.SEVERE, null, th);
+            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.internalError, Miscellaneous.getRootCauseMessage(th)));
         }
-        return ret;
+    }
+
+    /**
+     * Puts the request in asynchronous mode, releasing the container thread,
+     * and renders the response once the pending execution completes or times
+     * out, whatever happens first.
+     */
+    private void startAsync(final HttpServletRequest req, final HttpServletResponse resp, final JsonService<?, ?> service, final ServiceResult result) {
+        final AsyncContext asyncContext = req.startAsync(req, resp);
+        asyncContext.setTimeout(asyncTimeout);
+        final AtomicBoolean finished = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (finished.compareAndSet(false, true)) {
+                    result.getPending().cancel(true);
+                    JsonResponse<Object> jsonResponse = new JsonResponse<Object>();
+                    jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.timeoutError, "Execution timed out after " + asyncTimeout + " ms"));
+                    result.setResponse(jsonResponse);
+                    finishAsync(asyncContext, req, resp, service, result);
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+                finished.set(true);
+                result.getPending().cancel(true);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+            }
+        });
+        result.getPending().addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (finished.compareAndSet(false, true)) {
+                    JsonResponse<Object> jsonResponse = result.getResponse();
+                    ServiceMetrics serviceMetrics = getServiceMetrics(service);
+                    endPhase(serviceMetrics, result.getTrace(), Phase.EXECUTE, result.getStartNanos());
+                    try {
+                        jsonResponse.setValue(ActionFuture.await(result.getPending()));
+                        if (result.getCacheKey() != null) {
+                            long start = beginPhase(result.getTrace(), Phase.SERIALIZE);
+                            byte[] body = JsonPayload.valueOf(jsonResponse, service).toByteArray();
+                            endPhase(serviceMetrics, result.getTrace(), Phase.SERIALIZE, start);
+                            responseCache.put(result.getCacheKey(), result.getCachingInfo(), body);
+                            result.setPayload(cachedPayload(result.getCacheKey(), body));
+                        }
+                    } catch (Throwable th) {
+                        setExecutionError(jsonResponse, th);
+                    }
+                    finishAsync(asyncContext, req, resp, service, result);
+                }
+            }
+        });
+    }
+
+    private void finishAsync(AsyncContext asyncContext, HttpServletRequest req, HttpServletResponse resp, JsonService<?, ?> service, ServiceResult result) {
+        JsonPayload json = null;
+        try {
+            json = result.getPayload() != null ? result.getPayload() : JsonPayload.valueOf(result.getResponse(), service);
+            render(req, resp, result.getResponse(), json, result.getCachingInfo(), null, service, result.getTrace());
+        } catch (Exception ex) {
+            Logger.getLogger(JsonServlet.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            if (result.getTrace() != null) {
+                endCall(result.getTrace(), result.getResponse(), json);
+            }
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Executes a batch of service invocations, rendering an array with the
+     * response of each item in the same order. Items are independent, so an
+     * error in one of them does not affect the others. If all items are safe
+     * and a batch executor is configured, they are executed concurrently.
+     */
+    private void executeBatch(final HttpServletRequest req, final HttpServletResponse resp, String batchStr) throws IOException {
+        JsonResponse<Object> batchError = null;
+        JsonPayload[] items = null;
+        try {
+            final ServiceTable table = serviceTable;
+            JsonNode batchNode = JsonCodec.getInstance().parse(batchStr);
+            if (batchNode.getNodeType() != JsonNode.Type.ARRAY) {
+                throw new ValidationException(Miscellaneous.createList("Batch must be an array of {\"id\": <service-id>, \"input\": <input>} objects"));
+            }
+            int size = batchNode.getSize();
+            final JsonService<?, ?>[] batchServices = new JsonService<?, ?>[size];
+            final JsonNode[] inputs = new JsonNode[size];
+            boolean allSafe = true;
+            for (int i = 0; i < size; i++) {
+                JsonNode itemNode = batchNode.get(i);
+                JsonNode idNode = itemNode.getNodeType() == JsonNode.Type.OBJECT ? itemNode.get(PARAM_ID) : null;
+                if (idNode == null || idNode.getNodeType() != JsonNode.Type.STRING) {
+                    throw new ValidationException(Miscellaneous.createList("Batch item #" + i + " has no \"id\" string property"));
+                }
+                batchServices[i] = table.services.get(idNode.asString());
+                inputs[i] = itemNode.get(PARAM_INPUT);
+                if (batchServices[i] != null && !(batchServices[i].getAction() instanceof SafeAction)) {
+                    allSafe = false;
+                }
+            }
+            items = new JsonPayload[size];
+            if (batchExecutor != null && allSafe && size > 1) {
+                List<Future<JsonPayload>> futures = new ArrayList<Future<JsonPayload>>(size);
+                for (int i = 0; i < size; i++) {
+                    final int index = i;
+                    futures.add(batchExecutor.submit(new Callable<JsonPayload>() {
+                        @Override
+                        public JsonPayload call() throws Exception {
+                            return executeBatchItem(table, req, resp, batchServices[index], inputs[index]);
+                        }
+                    }));
+                }
+                for (int i = 0; i < size; i++) {
+                    try {
+                        items[i] = futures.get(i).get();
+                    } catch (ExecutionException ex) {
+                        throw new RuntimeException(ex.getCause());
+                    }
+                }
+            } else {
+                for (int i = 0; i < size; i++) {
+                    items[i] = executeBatchItem(table, req, resp, batchServices[i], inputs[i]);
+                }
+            }
+        } catch (ParseException ex) {
+            batchError = new JsonResponse<Object>();
+            batchError.setError(batchError.new ErrorDescription(JsonResponse.Error.parseError, Miscellaneous.getRootCauseMessage(ex)));
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        } catch (ValidationException vex) {
+            batchError = new JsonResponse<Object>();
+            batchError.setError(batchError.new ErrorDescription(JsonResponse.Error.invalidInput, vex.getMessages()));
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        } catch (Exception ex) {
+            batchError = new JsonResponse<Object>();
+            batchError.setError(batchError.new ErrorDescription(JsonResponse.Error.internalError, Miscellaneous.getRootCauseMessage(ex)));
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            Logger.getLogger(JsonServlet.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        addNoCacheHeaders(req, resp);
+        JsonPayload json;
+        if (batchError != null) {
+            json = JsonPayload.valueOf(batchError);
+        } else {
+            json = JsonPayload.valueOf(items);
+        }
+        renderer.service(getServletConfig(), req, resp, encodable(json), null, null);
+    }
+
+    private JsonPayload executeBatchItem(ServiceTable table, HttpServletRequest req, HttpServletResponse resp, JsonService<?, ?> service, JsonNode inputNode) {
+        if (service != null && service.getAction() instanceof UnsafeAction && req.getMethod().equals("GET")) {
+            getServiceMetrics(service).recordCall(JsonResponse.Error.invalidMethodError, false);
+            JsonResponse<Object> jsonResponse = new JsonResponse<Object>();
+            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.invalidMethodError));
+            return JsonPayload.valueOf(jsonResponse);
+        }
+        prepareActionContext(req, resp);
+        try {
+            ServiceResult result = executeService(table, new ServiceResult(), service, inputNode, null, null, false);
+            JsonResponse<Object> jsonResponse = result.getResponse();
+            getServiceMetrics(service).recordCall(jsonResponse.getError() != null ? JsonResponse.Error.valueOf(jsonResponse.getError().getCode()) : null, false);
+            if (result.getPayload() != null) {
+                return result.getPayload();
+            }
+            return JsonPayload.valueOf(jsonResponse, service);
+        } finally {
+            clearActionContext();
+        }
+    }
+
+    /**
+     * Key of an invocation for the etag registry, the response cache and
+     * request coalescing. It is computed from the tree of the bound input
+     * (walked through the input binding, not serialized), so it is the same
+     * key applications get when invalidating the input (see
+     * {@link EtagRegistry#getKey(String, Object)}).
+     */
+    private static String getCacheKey(JsonService<?, ?> service, Object input, JsonNode inputNode) {
+        return EtagRegistry.getKey(service.getId(), service.getKeyNode(input, inputNode));
+    }
+
+    /**
+     * Action of the service, typed to be invoked with the inputs loaded by
+     * the service.
+     */
+    @SuppressWarnings("unchecked") // inputs are loaded with the input class resolved from the action
+    private static JsonAction<Object, Object> getAction(JsonService<?, ?> service) {
+        return (JsonAction<Object, Object>) service.getAction();
     }
 
     private static void addContentLocation(HttpServletRequest req, HttpServletResponse resp) {
@@ -458,6 +1592,339 @@ public class JsonServlet extends HttpServlet {
         resp.addHeader("Content-Location", resp.encodeRedirectURL(requestURL.toString()));
     }
 
+    /**
+     * Payload offering its content compressed in the supported content-codings
+     * once its size reaches the compression threshold. The content is not
+     * materialized to decide it: unless precomputed, compressed variants are
+     * produced by the renderer while writing (see
+     * {@link JsonPayload#getCompressionThreshold()}). Compressed variants of
+     * bodies coming from the response cache are stored in it, so subsequent
+     * hits are served without compressing again.
+     */
+    private final class EncodablePayload extends JsonPayload {
+
+        private final JsonPayload payload;
+        private final String cacheKey;
+        private byte[] utf8;
+
+        EncodablePayload(JsonPayload payload, byte[] utf8, String cacheKey) {
+            this.payload = payload;
+            this.utf8 = utf8;
+            this.cacheKey = cacheKey;
+        }
+
+        @Override
+        public void writeTo(OutputStream os) throws IOException {
+            if (utf8 != null) {
+                os.write(utf8);
+            } else {
+                payload.writeTo(os);
+            }
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            if (utf8 == null) {
+                utf8 = payload.toByteArray();
+            }
+            return utf8;
+        }
+
+        @Override
+        public int getLength() {
+            return utf8 != null ? utf8.length : payload.getLength();
+        }
+
+        @Override
+        public String getEtag() {
+            return payload == null ? null : payload.getEtag();
+        }
+
+        @Override
+        public String[] getContentCodings() {
+            int length = getLength();
+            if (compressionThreshold < 0 || length >= 0 && length < compressionThreshold) {
+                return super.getContentCodings();
+            }
+            return CONTENT_CODINGS;
+        }
+
+        @Override
+        public int getCompressionThreshold() {
+            return compressionThreshold;
+        }
+
+        @Override
+        public DeflaterPool getDeflaterPool() {
+            return deflaterPool;
+        }
+
+        /**
+         * @return the precomputed variant of the wrapped payload or, for
+         * bodies coming from the response cache, its stored or newly
+         * compressed variant. {@code null} otherwise, so the payload is
+         * compressed on the fly
+         */
+        @Override
+        public byte[] getEncoded(String contentCoding) {
+            if (compressionThreshold < 0) {
+                return null;
+            }
+            if (utf8 == null) {
+                return payload.getEncoded(contentCoding);
+            }
+            if (cacheKey == null || !DeflaterPool.isSupported(contentCoding) || utf8.length < compressionThreshold) {
+                return null;
+            }
+            byte[] encoded = responseCache.getEncoded(cacheKey, utf8, contentCoding);
+            if (encoded == null) {
+                encoded = deflaterPool.encode(utf8, contentCoding);
+                responseCache.putEncoded(cacheKey, utf8, contentCoding, encoded);
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * Action context, reused by the requests processed by each thread.
+     */
+    private static final class RequestContext extends JsonActionContext {
+
+        private static final ThreadLocal<RequestContext> REUSABLE = new ThreadLocal<RequestContext>() {
+            @Override
+            protected RequestContext initialValue() {
+                return new RequestContext();
+            }
+        };
+
+        private JsonServlet servlet;
+        private HttpServletRequest req;
+        private HttpServletResponse resp;
+
+        void set(JsonServlet servlet, HttpServletRequest req, HttpServletResponse resp) {
+            this.servlet = servlet;
+            this.req = req;
+            this.resp = resp;
+        }
+
+        @Override
+        public Object getServlet() {
+            return servlet;
+        }
+
+        @Override
+        public Object getRequest() {
+            return req;
+        }
+
+        @Override
+        public Object getResponse() {
+            return resp;
+        }
+    }
+
+    /**
+     * Thrown when the request body exceeds the maximum size allowed.
+     */
+    private static final class RequestTooLargeException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class ServiceResult {
+
+        /**
+         * Per-thread instances reused by the synchronous requests processed by
+         * each thread
+         */
+        private static final ThreadLocal<ServiceResult> REUSABLE = new ThreadLocal<ServiceResult>() {
+            @Override
+            protected ServiceResult initialValue() {
+                return new ServiceResult();
+            }
+        };
+
+        private final JsonResponse<Object> envelope = new JsonResponse<Object>();
+        private JsonResponse<Object> response = envelope;
+        private CachingInfo cachingInfo;
+        private JsonPayload payload;
+        private ActionFuture<Object> pending;
+        private String cacheKey;
+        private long startNanos;
+        private CallTrace trace;
+
+        static ServiceResult acquire() {
+            return REUSABLE.get().reset();
+        }
+
+        /**
+         * Stops reusing the instance, if it is the reusable one of the current
+         * thread.
+         */
+        static void detach(ServiceResult result) {
+            if (REUSABLE.get() == result) {
+                REUSABLE.set(new ServiceResult());
+            }
+        }
+
+        static ServiceResult parseError(ParseException ex) {
+            ServiceResult ret = new ServiceResult();
+            JsonResponse<Object> jsonResponse = ret.getResponse();
+            jsonResponse.setError(jsonResponse.new ErrorDescription(JsonResponse.Error.parseError, Miscellaneous.getRootCauseMessage(ex)));
+            return ret;
+        }
+
+        static ServiceResult error(JsonResponse.Error error) {
+            ServiceResult ret = new ServiceResult();
+            JsonResponse<Object> jsonResponse = ret.getResponse();
+            jsonResponse.setError(jsonResponse.new ErrorDescription(error));
+            return ret;
+        }
+
+        ServiceResult reset() {
+            envelope.setError(null);
+            envelope.setValue(null);
+            response = envelope;
+            cachingInfo = null;
+            payload = null;
+            pending = null;
+            cacheKey = null;
+            startNanos = 0;
+            trace = null;
+            return this;
+        }
+
+        public JsonResponse<Object> getResponse() {
+            return response;
+        }
+
+        public void setResponse(JsonResponse<Object> response) {
+            this.response = response;
+        }
+
+        public CachingInfo getCachingInfo() {
+            return cachingInfo;
+        }
+
+        public void setCachingInfo(CachingInfo cachingInfo) {
+            this.cachingInfo = cachingInfo;
+        }
+
+        /**
+         * Already serialized response, if any
+         *
+         * @return
+         */
+        public JsonPayload getPayload() {
+            return payload;
+        }
+
+        public void setPayload(JsonPayload payload) {
+            this.payload = payload;
+        }
+
+        /**
+         * Execution of an asynchronous action, not completed yet
+         *
+         * @return
+         */
+        public ActionFuture<Object> getPending() {
+            return pending;
+        }
+
+        public void setPending(ActionFuture<Object> pending) {
+            this.pending = pending;
+        }
+
+        /**
+         * Key to store the response with once the pending execution
+         * completes
+         *
+         * @return
+         */
+        public String getCacheKey() {
+            return cacheKey;
+        }
+
+        public void setCacheKey(String cacheKey) {
+            this.cacheKey = cacheKey;
+        }
+
+        /**
+         * Start time of the pending execution
+         *
+         * @return
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public void setStartNanos(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Timing record of the call, if instrumented
+         *
+         * @return
+         */
+        public CallTrace getTrace() {
+            return trace;
+        }
+
+        public void setTrace(CallTrace trace) {
+            this.trace = trace;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the services, replaced as a whole on reload.
+     */
+    private static final class ServiceTable {
+
+        private final DispatchTable<JsonService<?, ?>> services;
+        private final Map<String, Semaphore> semaphores;
+        private final Map<String, Bulkhead> bulkheads;
+        /**
+         * Service listing, computed on first use. The payload is published
+         * after the response
+         */
+        private volatile JsonResponse<Object> servicesResponse;
+        private volatile JsonPayload servicesPayload;
+
+        private ServiceTable(DispatchTable<JsonService<?, ?>> services, Map<String, Semaphore> semaphores, Map<String, Bulkhead> bulkheads) {
+            this.services = services;
+            this.semaphores = semaphores;
+            this.bulkheads = bulkheads;
+        }
+
+        private JsonPayload getServicesPayload() {
+            JsonPayload ret = servicesPayload;
+            if (ret == null) {
+                synchronized (this) {
+                    ret = servicesPayload;
+                    if (ret == null) {
+                        ServiceItem[] serviceItems = new ServiceItem[services.size()];
+                        int i = 0;
+                        for (JsonService<?, ?> service : services.asMap().values()) {
+                            ServiceItem si = new ServiceItem();
+                            si.setId(service.getId());
+                            si.setSafe(service.getAction() instanceof SafeAction);
+                            si.setDescription(service.getDescription());
+                            serviceItems[i++] = si;
+                        }
+                        JsonResponse<Object> response = new JsonResponse<Object>();
+                        response.setValue(serviceItems);
+                        servicesResponse = response;
+                        ret = JsonPayload.precompute(JsonPayload.valueOf(response).toString());
+                        servicesPayload = ret;
+                    }
+                }
+            }
+            return ret;
+        }
+    }
+
     private static class ServiceItem {
 
         private String id;
@@ -64,4 +64,24 @@ public abstract class SafeAction<I, O> extends JsonAction<I, O> {
     public CachingInfo getCachingInfo(I input) {
         return null;
     }
+
+    /**
+     * Returns a key identifying the response to a raw (not parsed yet) input,
+     * so that two inputs with the same key produce the same response (for
+     * example the raw input itself, or an identifier extracted from it).
+     * <br/><br/>When the etag registry of the framework servlet is enabled,
+     * etags registered for an input are also bound to its key, so later
+     * conditional requests with the same key are answered with
+     * <code>304 (Not Modified)</code> before the input is parsed, validated and
+     * bound. Input validation is only performed when a response body is
+     * produced.
+     * <br/><br/>This method must be cheap compared to parsing the input.
+     * Default implementation returns {@code null}, disabling this fast path.
+     *
+     * @param rawInput JSON input, as received
+     * @return
+     */
+    public String getRawInputKey(String rawInput) {
+        return null;
+    }
 }
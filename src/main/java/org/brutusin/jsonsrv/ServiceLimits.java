@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv;
+
+/**
+ * Bulkhead configuration of a service: concurrent executions allowed and
+ * bounded wait queue. Read from the <code>jsonsrv.json</code> mappings (see
+ * {@link ActionMapping}), or declared as beans of this class in the spring
+ * configuration of {@link SpringJsonServlet}.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class ServiceLimits {
+
+    public static final long DEFAULT_QUEUE_TIMEOUT = 1000;
+
+    private String serviceId;
+    private int maxConcurrency;
+    private int maxQueueSize;
+    private long queueTimeout = DEFAULT_QUEUE_TIMEOUT;
+    private boolean adaptive;
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    public void setServiceId(String serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    /**
+     * @return maximum number of concurrent executions of the service
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return maximum number of executions waiting for a permit when the
+     * concurrency limit is reached
+     */
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * @return maximum time in milliseconds an execution waits in the queue
+     */
+    public long getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    public void setQueueTimeout(long queueTimeout) {
+        this.queueTimeout = queueTimeout;
+    }
+
+    /**
+     * @return whether the concurrency limit adapts (below
+     * {@link #getMaxConcurrency()}) to the observed latency
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ServiceLimits)) {
+            return false;
+        }
+        ServiceLimits other = (ServiceLimits) obj;
+        return maxConcurrency == other.maxConcurrency && maxQueueSize == other.maxQueueSize && queueTimeout == other.queueTimeout && adaptive == other.adaptive && (serviceId == null ? other.serviceId == null : serviceId.equals(other.serviceId));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * maxConcurrency + maxQueueSize) + (int) queueTimeout) + (adaptive ? 1 : 0);
+    }
+}
@@ -14,10 +14,16 @@
  * limitations under the License.
  */package org.brutusin.jsonsrv;
 
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 
 /**
  *
@@ -28,6 +34,13 @@ public class SpringJsonServlet extends JsonServlet {
     public static final String INIT_PARAM_SPRING_CFG_FILE = "spring-cfg";
     private static final String DEFAULT_CFG_FILE = "classpath*:/jsonsrv.xml";
 
+    /**
+     * Context of the last load, also used to look up the service limits. It
+     * holds the action beans of the current services, so it is closed once
+     * they are replaced (or destroyed)
+     */
+    private ConfigurableApplicationContext applicationContext;
+
     @Override
     protected List<String> getSupportedInitParams() {
         List<String> supportedInitParams = super.getSupportedInitParams();
@@ -35,6 +48,24 @@ public class SpringJsonServlet extends JsonServlet {
         return supportedInitParams;
     }
 
+    @Override
+    protected List<URL> getMappingResources() throws IOException {
+        List<URL> ret = new ArrayList<URL>();
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(getClassLoader());
+        for (Resource resource : resolver.getResources(DEFAULT_CFG_FILE)) {
+            ret.add(resource.getURL());
+        }
+        String springConfigFile = getServletConfig().getInitParameter(INIT_PARAM_SPRING_CFG_FILE);
+        if (springConfigFile != null) {
+            for (Resource resource : resolver.getResources(springConfigFile)) {
+                if (resource.exists()) {
+                    ret.add(resource.getURL());
+                }
+            }
+        }
+        return ret;
+    }
+
     @Override
     protected Map<String, JsonAction> loadActions() throws Exception {
         String springConfigFile = getServletConfig().getInitParameter(INIT_PARAM_SPRING_CFG_FILE);
@@ -45,6 +76,60 @@ public class SpringJsonServlet extends JsonServlet {
             applicationContext = new ClassPathXmlApplicationContext(springConfigFile, DEFAULT_CFG_FILE);
         }
         applicationContext.setClassLoader(getClassLoader());
+        this.applicationContext = applicationContext;
         return applicationContext.getBeansOfType(JsonAction.class);
     }
+
+    /**
+     * Closes the context of the previous services once the new ones are in
+     * place, or the new context if they could not be loaded.
+     *
+     * @throws Exception
+     */
+    @Override
+    public synchronized void reload() throws Exception {
+        ConfigurableApplicationContext previous = this.applicationContext;
+        try {
+            super.reload();
+        } catch (Exception ex) {
+            if (this.applicationContext != previous) {
+                this.applicationContext.close();
+                this.applicationContext = previous;
+            }
+            throw ex;
+        }
+        if (previous != null && previous != this.applicationContext) {
+            previous.close();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        synchronized (this) {
+            if (this.applicationContext != null) {
+                this.applicationContext.close();
+                this.applicationContext = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link ServiceLimits} beans of the spring configuration, by
+     * their <code>serviceId</code> property.
+     *
+     * @return
+     * @throws Exception
+     */
+    @Override
+    protected Map<String, ServiceLimits> loadLimits() throws Exception {
+        Map<String, ServiceLimits> ret = new HashMap<String, ServiceLimits>();
+        for (ServiceLimits limits : applicationContext.getBeansOfType(ServiceLimits.class).values()) {
+            if (limits.getServiceId() == null) {
+                throw new Error("Service limits bean found with no serviceId property");
+            }
+            ret.put(limits.getServiceId(), limits);
+        }
+        return ret;
+    }
 }
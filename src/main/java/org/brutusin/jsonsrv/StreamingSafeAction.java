@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Ignacio del Valle Alles idelvall@brutusin.org.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv;
+
+import java.util.Iterator;
+
+/**
+ * {@link SafeAction} returning a (potentially large) sequence of elements,
+ * that is serialized element by element into the <code>value</code> array of
+ * the response while the iterator is consumed. Elements are not required to
+ * exist in memory at the same time, so heap usage does not depend on the size
+ * of the result, and the response is sent using chunked transfer encoding.
+ * <br/><br/><b>Errors during streaming</b>: Once the first bytes are sent, the
+ * status code of the response can not be changed. If the iterator (or the
+ * serialization of an element) fails, the <code>value</code> array is closed
+ * with the elements already written, and an <code>internal error</code> is
+ * appended as the <code>error</code> member of the response. So clients must
+ * check the presence of <code>error</code> even in <code>200 (OK)</code>
+ * responses.
+ * <br/><br/>If the iterator implements {@link java.io.Closeable}, it is closed
+ * once consumed or after a failure. Since it is consumed after
+ * {@link #execute(java.lang.Object)} returns, {@link JsonActionContext} is not
+ * available to it.
+ * <br/><br/>Responses of these actions are never stored in the server-side
+ * response cache nor shared by coalesced requests, but conditional requests
+ * are supported as for any other safe action.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ * @param <I> Input POJO class.
+ * @param <E> Element POJO class
+ */
+public abstract class StreamingSafeAction<I, E> extends SafeAction<I, Iterator<E>> {
+
+    /**
+     * Business logic method. The returned iterator is consumed after this
+     * method returns, while the response is written.
+     *
+     * @param input
+     * @return
+     * @throws Exception
+     */
+    @Override
+    public abstract Iterator<E> execute(I input) throws Exception;
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.binding;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import org.brutusin.commons.json.spi.JsonNode;
+
+/**
+ * Immutable {@link JsonNode} built by a {@link TypeBinding} from a Java value,
+ * equal to the tree that results from parsing the JSON representation of the
+ * value.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+final class BoundNode implements JsonNode {
+
+    static final BoundNode NULL = new BoundNode(Type.NULL, null, null, null);
+    static final BoundNode TRUE = new BoundNode(Type.BOOLEAN, Boolean.TRUE, null, null);
+    static final BoundNode FALSE = new BoundNode(Type.BOOLEAN, Boolean.FALSE, null, null);
+    private static final String[] NO_NAMES = new String[0];
+
+    private final Type type;
+    private final Object value;
+    /**
+     * Property names of objects, null for arrays
+     */
+    private final String[] names;
+    /**
+     * Elements of arrays, or property values of objects
+     */
+    private final BoundNode[] children;
+
+    private BoundNode(Type type, Object value, String[] names, BoundNode[] children) {
+        this.type = type;
+        this.value = value;
+        this.names = names;
+        this.children = children;
+    }
+
+    static BoundNode valueOf(boolean b) {
+        return b ? TRUE : FALSE;
+    }
+
+    static BoundNode valueOf(long l) {
+        return new BoundNode(Type.INTEGER, l, null, null);
+    }
+
+    static BoundNode valueOf(double d) {
+        return new BoundNode(Type.NUMBER, d, null, null);
+    }
+
+    static BoundNode valueOf(String str) {
+        return str == null ? NULL : new BoundNode(Type.STRING, str, null, null);
+    }
+
+    static BoundNode array(BoundNode[] elements) {
+        return new BoundNode(Type.ARRAY, null, null, elements);
+    }
+
+    /**
+     * @param names property names, only the first <code>size</code> are used
+     * @param values property values, only the first <code>size</code> are
+     * used
+     * @param size
+     * @return
+     */
+    static BoundNode object(String[] names, BoundNode[] values, int size) {
+        if (size == 0) {
+            return new BoundNode(Type.OBJECT, null, NO_NAMES, new BoundNode[0]);
+        }
+        if (size < names.length) {
+            names = Arrays.copyOf(names, size);
+            values = Arrays.copyOf(values, size);
+        }
+        return new BoundNode(Type.OBJECT, null, names, values);
+    }
+
+    @Override
+    public Type getNodeType() {
+        return type;
+    }
+
+    @Override
+    public Boolean asBoolean() {
+        return type == Type.BOOLEAN ? (Boolean) value : null;
+    }
+
+    @Override
+    public Integer asInteger() {
+        return value instanceof Number ? ((Number) value).intValue() : null;
+    }
+
+    @Override
+    public Long asLong() {
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+
+    @Override
+    public Double asDouble() {
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+
+    @Override
+    public String asString() {
+        return type == Type.STRING ? (String) value : null;
+    }
+
+    @Override
+    public int getSize() {
+        return children == null ? 0 : children.length;
+    }
+
+    @Override
+    public JsonNode get(int i) {
+        if (type != Type.ARRAY || i < 0 || i >= children.length) {
+            return null;
+        }
+        return children[i];
+    }
+
+    @Override
+    public Iterator<String> getProperties() {
+        if (names == null) {
+            return null;
+        }
+        return Arrays.asList(names).iterator();
+    }
+
+    @Override
+    public JsonNode get(String property) {
+        if (names == null) {
+            return null;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(property)) {
+                return children[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        toString(sb);
+        return sb.toString();
+    }
+
+    private void toString(StringBuilder sb) {
+        switch (type) {
+            case NULL:
+                sb.append("null");
+                break;
+            case STRING:
+                TypeBinding.quote((String) value, sb);
+                break;
+            case ARRAY:
+                sb.append('[');
+                for (int i = 0; i < children.length; i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    children[i].toString(sb);
+                }
+                sb.append(']');
+                break;
+            case OBJECT:
+                sb.append('{');
+                for (int i = 0; i < names.length; i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    TypeBinding.quote(names[i], sb);
+                    sb.append(':');
+                    children[i].toString(sb);
+                }
+                sb.append('}');
+                break;
+            default:
+                sb.append(value);
+        }
+    }
+}
@@ -0,0 +1,768 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.binding;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.brutusin.commons.json.spi.JsonNode;
+
+/**
+ * Dedicated binder between JSON and a Java type, built once per type (at
+ * service initialization) as a tree of per-property bindings, so no bean
+ * introspection is performed per call.
+ * <br/><br/>
+ * Only a conservative subset of types is supported (those for which the
+ * output is known to be equivalent to the one of the SPI codec): strings,
+ * numeric and boolean primitives and wrappers, arrays and lists of supported
+ * types, and plain beans (public, with a public no-arg constructor, standard
+ * accessors, and no annotations or public fields) whose properties are of
+ * supported types. Values that are found not to be supported at runtime (for
+ * example, subclasses of the declared types) are reported, so the caller can
+ * fall back to the SPI codec.
+ * <br/><br/>
+ * Bean constructors and accessors are resolved once per type, with access
+ * checks suppressed, so they are not looked up nor checked per call.
+ * Exceptions thrown by them are propagated to the caller (and not reported as
+ * unsupported values), so they are not invoked again by the SPI codec.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public abstract class TypeBinding {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    TypeBinding() {
+    }
+
+    /**
+     * Creates the binding for a type.
+     *
+     * @param type
+     * @return the binding, or {@code null} if the type is not supported
+     */
+    public static TypeBinding create(Class<?> type) {
+        return create(type, new HashMap<Type, TypeBinding>());
+    }
+
+    /**
+     * Binds a validated input tree to a new instance of the type.
+     *
+     * @param node
+     * @return
+     * @throws UnsupportedBindingException if the input has to be bound by the
+     * SPI codec
+     */
+    public abstract Object read(JsonNode node) throws UnsupportedBindingException;
+
+    /**
+     * Returns the JSON representation of a value of the type.
+     *
+     * @param value
+     * @return
+     * @throws UnsupportedBindingException if the value has to be serialized by
+     * the SPI codec
+     */
+    public final String write(Object value) throws UnsupportedBindingException {
+        StringBuilder sb = new StringBuilder(64);
+        write(value, sb);
+        return sb.toString();
+    }
+
+    abstract void write(Object value, StringBuilder sb) throws UnsupportedBindingException;
+
+    /**
+     * Returns the tree of a value of the type, equal to the result of parsing
+     * its JSON representation, without serializing it.
+     *
+     * @param value
+     * @return
+     * @throws UnsupportedBindingException if the value has to be serialized by
+     * the SPI codec
+     */
+    public final JsonNode toNode(Object value) throws UnsupportedBindingException {
+        return node(value);
+    }
+
+    abstract BoundNode node(Object value) throws UnsupportedBindingException;
+
+    private static TypeBinding create(Type type, Map<Type, TypeBinding> created) {
+        TypeBinding ret = created.get(type);
+        if (ret != null) {
+            return ret;
+        }
+        if (type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) type;
+            Type raw = pt.getRawType();
+            if ((raw == List.class || raw == Collection.class || raw == ArrayList.class) && pt.getActualTypeArguments().length == 1) {
+                TypeBinding element = create(pt.getActualTypeArguments()[0], created);
+                return element == null ? null : new ListBinding(element);
+            }
+            return null;
+        }
+        if (!(type instanceof Class)) {
+            return null;
+        }
+        Class<?> clazz = (Class<?>) type;
+        if (clazz == String.class) {
+            return StringBinding.INSTANCE;
+        }
+        ret = PrimitiveBinding.valueOf(clazz);
+        if (ret != null) {
+            return ret;
+        }
+        if (clazz.isArray()) {
+            Class<?> componentType = clazz.getComponentType();
+            if (componentType == byte.class || componentType == char.class) {
+                // serialized as strings by the codec
+                return null;
+            }
+            TypeBinding component = create(componentType, created);
+            return component == null ? null : new ArrayBinding(componentType, component);
+        }
+        return BeanBinding.valueOf(clazz, created);
+    }
+
+    static void quote(String str, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static final class StringBinding extends TypeBinding {
+
+        static final StringBinding INSTANCE = new StringBinding();
+
+        @Override
+        public Object read(JsonNode node) throws UnsupportedBindingException {
+            JsonNode.Type type = node.getNodeType();
+            if (type == JsonNode.Type.NULL) {
+                return null;
+            }
+            if (type != JsonNode.Type.STRING) {
+                throw UnsupportedBindingException.INSTANCE;
+            }
+            return node.asString();
+        }
+
+        @Override
+        void write(Object value, StringBuilder sb) throws UnsupportedBindingException {
+            if (value == null) {
+                sb.append("null");
+            } else {
+                quote((String) value, sb);
+            }
+        }
+
+        @Override
+        BoundNode node(Object value) {
+            return BoundNode.valueOf((String) value);
+        }
+    }
+
+    private static final class PrimitiveBinding extends TypeBinding {
+
+        private static final int BOOLEAN = 0;
+        private static final int INT = 1;
+        private static final int LONG = 2;
+        private static final int SHORT = 3;
+        private static final int DOUBLE = 4;
+        private static final int FLOAT = 5;
+
+        private final int kind;
+        private final boolean primitive;
+
+        private PrimitiveBinding(int kind, boolean primitive) {
+            this.kind = kind;
+            this.primitive = primitive;
+        }
+
+        static PrimitiveBinding valueOf(Class<?> clazz) {
+            if (clazz == boolean.class || clazz == Boolean.class) {
+                return new PrimitiveBinding(BOOLEAN, clazz.isPrimitive());
+            } else if (clazz == int.class || clazz == Integer.class) {
+                return new PrimitiveBinding(INT, clazz.isPrimitive());
+            } else if (clazz == long.class || clazz == Long.class) {
+                return new PrimitiveBinding(LONG, clazz.isPrimitive());
+            } else if (clazz == short.class || clazz == Short.class) {
+                return new PrimitiveBinding(SHORT, clazz.isPrimitive());
+            } else if (clazz == double.class || clazz == Double.class) {
+                return new PrimitiveBinding(DOUBLE, clazz.isPrimitive());
+            } else if (clazz == float.class || clazz == Float.class) {
+                return new PrimitiveBinding(FLOAT, clazz.isPrimitive());
+            }
+            return null;
+        }
+
+        @Override
+        public Object read(JsonNode node) throws UnsupportedBindingException {
+            JsonNode.Type type = node.getNodeType();
+            if (type == JsonNode.Type.NULL && !primitive) {
+                return null;
+            }
+            if (kind == BOOLEAN) {
+                if (type != JsonNode.Type.BOOLEAN) {
+                    throw UnsupportedBindingException.INSTANCE;
+                }
+                return node.asBoolean();
+            }
+            if (kind == DOUBLE || kind == FLOAT) {
+                if (type != JsonNode.Type.NUMBER && type != JsonNode.Type.INTEGER) {
+                    throw UnsupportedBindingException.INSTANCE;
+                }
+                Double d = node.asDouble();
+                return kind == DOUBLE ? d : (Object) d.floatValue();
+            }
+            if (type != JsonNode.Type.INTEGER) {
+                throw UnsupportedBindingException.INSTANCE;
+            }
+            Long l = node.asLong();
+            if (kind == LONG) {
+                return l;
+            } else if (kind == INT && l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+                return l.intValue();
+            } else if (kind == SHORT && l >= Short.MIN_VALUE && l <= Short.MAX_VALUE) {
+                return l.shortValue();
+            }
+            throw UnsupportedBindingException.INSTANCE;
+        }
+
+        @Override
+        void write(Object value, StringBuilder sb) throws UnsupportedBindingException {
+            if (value == null) {
+                sb.append("null");
+            } else if (kind == DOUBLE || kind == FLOAT) {
+                double d = ((Number) value).doubleValue();
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    throw UnsupportedBindingException.INSTANCE;
+                }
+                sb.append(value);
+            } else {
+                sb.append(value);
+            }
+        }
+
+        @Override
+        BoundNode node(Object value) throws UnsupportedBindingException {
+            if (value == null) {
+                return BoundNode.NULL;
+            } else if (kind == BOOLEAN) {
+                return BoundNode.valueOf(((Boolean) value).booleanValue());
+            } else if (kind == DOUBLE || kind == FLOAT) {
+                double d = ((Number) value).doubleValue();
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    throw UnsupportedBindingException.INSTANCE;
+                }
+                // floats are written with their own decimal representation
+                return BoundNode.valueOf(kind == FLOAT ? Double.parseDouble(value.toString()) : d);
+            } else {
+                return BoundNode.valueOf(((Number) value).longValue());
+            }
+        }
+    }
+
+    private static final class ArrayBinding extends TypeBinding {
+
+        private final Class<?> componentType;
+        private final TypeBinding component;
+
+        ArrayBinding(Class<?> componentType, TypeBinding component) {
+            this.componentType = componentType;
+            this.component = component;
+        }
+
+        @Override
+        public Object read(JsonNode node) throws UnsupportedBindingException {
+            JsonNode.Type type = node.getNodeType();
+            if (type == JsonNode.Type.NULL) {
+                return null;
+            }
+            if (type != JsonNode.Type.ARRAY) {
+                throw UnsupportedBindingException.INSTANCE;
+            }
+            int size = node.getSize();
+            Object ret = Array.newInstance(componentType, size);
+            if (componentType.isPrimitive()) {
+                for (int i = 0; i < size; i++) {
+                    Array.set(ret, i, component.read(node.get(i)));
+                }
+            } else {
+                Object[] array = (Object[]) ret;
+                for (int i = 0; i < size; i++) {
+                    array[i] = component.read(node.get(i));
+                }
+            }
+            return ret;
+        }
+
+        @Override
+        void write(Object value, StringBuilder sb) throws UnsupportedBindingException {
+            if (value == null) {
+                sb.append("null");
+                return;
+            }
+            sb.append('[');
+            if (componentType.isPrimitive()) {
+                int length = Array.getLength(value);
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    component.write(Array.get(value, i), sb);
+                }
+            } else {
+                Object[] array = (Object[]) value;
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    component.write(array[i], sb);
+                }
+            }
+            sb.append(']');
+        }
+
+        @Override
+        BoundNode node(Object value) throws UnsupportedBindingException {
+            if (value == null) {
+                return BoundNode.NULL;
+            }
+            BoundNode[] elements;
+            if (componentType.isPrimitive()) {
+                elements = new BoundNode[Array.getLength(value)];
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = component.node(Array.get(value, i));
+                }
+            } else {
+                Object[] array = (Object[]) value;
+                elements = new BoundNode[array.length];
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = component.node(array[i]);
+                }
+            }
+            return BoundNode.array(elements);
+        }
+    }
+
+    private static final class ListBinding extends TypeBinding {
+
+        private final TypeBinding element;
+
+        ListBinding(TypeBinding element) {
+            this.element = element;
+        }
+
+        @Override
+        public Object read(JsonNode node) throws UnsupportedBindingException {
+            JsonNode.Type type = node.getNodeType();
+            if (type == JsonNode.Type.NULL) {
+                return null;
+            }
+            if (type != JsonNode.Type.ARRAY) {
+                throw UnsupportedBindingException.INSTANCE;
+            }
+            int size = node.getSize();
+            List<Object> ret = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                ret.add(element.read(node.get(i)));
+            }
+            return ret;
+        }
+
+        @Override
+        void write(Object value, StringBuilder sb) throws UnsupportedBindingException {
+            if (value == null) {
+                sb.append("null");
+                return;
+            }
+            sb.append('[');
+            Iterator<?> it = ((Collection<?>) value).iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                element.write(it.next(), sb);
+            }
+            sb.append(']');
+        }
+
+        @Override
+        BoundNode node(Object value) throws UnsupportedBindingException {
+            if (value == null) {
+                return BoundNode.NULL;
+            }
+            Collection<?> collection = (Collection<?>) value;
+            BoundNode[] elements = new BoundNode[collection.size()];
+            Iterator<?> it = collection.iterator();
+            for (int i = 0; i < elements.length && it.hasNext(); i++) {
+                elements[i] = element.node(it.next());
+            }
+            return BoundNode.array(elements);
+        }
+    }
+
+    private static final class BeanBinding extends TypeBinding {
+
+        private final Class<?> clazz;
+        private Constructor<?> constructor;
+        /**
+         * Readable properties, in serialization order
+         */
+        private Property[] readable;
+        private Map<String, Property> writable;
+
+        private BeanBinding(Class<?> clazz) {
+            this.clazz = clazz;
+        }
+
+        static BeanBinding valueOf(Class<?> clazz, Map<Type, TypeBinding> created) {
+            if (clazz.isPrimitive() || clazz.isInterface() || clazz.isEnum() || Modifier.isAbstract(clazz.getModifiers()) || !Modifier.isPublic(clazz.getModifiers()) || clazz.getName().startsWith("java.")) {
+                return null;
+            }
+            if (clazz.getEnclosingClass() != null && !Modifier.isStatic(clazz.getModifiers())) {
+                return null;
+            }
+            BeanBinding ret = new BeanBinding(clazz);
+            // registered before resolving properties, to support recursive types
+            created.put(clazz, ret);
+            if (!ret.init(created)) {
+                created.remove(clazz);
+                return null;
+            }
+            return ret;
+        }
+
+        private boolean init(Map<Type, TypeBinding> created) {
+            try {
+                constructor = clazz.getConstructor();
+            } catch (NoSuchMethodException ex) {
+                return false;
+            }
+            if (!setAccessible(constructor)) {
+                return false;
+            }
+            Map<String, Property> properties = new LinkedHashMap<String, Property>();
+            // Properties declared by fields (in declaration order) first, as the codec does
+            for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
+                if (isAnnotated(c)) {
+                    return false;
+                }
+                Field[] fields = c.getDeclaredFields();
+                for (int i = 0; i < fields.length; i++) {
+                    if (Modifier.isStatic(fields[i].getModifiers())) {
+                        continue;
+                    }
+                    if (Modifier.isPublic(fields[i].getModifiers()) || isAnnotated(fields[i])) {
+                        return false;
+                    }
+                }
+            }
+            Method[] methods = clazz.getMethods();
+            for (int i = 0; i < methods.length; i++) {
+                Method method = methods[i];
+                if (Modifier.isStatic(method.getModifiers()) || method.getDeclaringClass() == Object.class) {
+                    continue;
+                }
+                if (isAnnotated(method)) {
+                    return false;
+                }
+                String name = method.getName();
+                Type type;
+                String propertyName;
+                boolean getter;
+                if (name.startsWith("get") && method.getParameterTypes().length == 0 && method.getReturnType() != void.class) {
+                    propertyName = getPropertyName(name, 3);
+                    type = method.getGenericReturnType();
+                    getter = true;
+                } else if (name.startsWith("is") && method.getParameterTypes().length == 0 && method.getReturnType() == boolean.class) {
+                    propertyName = getPropertyName(name, 2);
+                    type = method.getGenericReturnType();
+                    getter = true;
+                } else if (name.startsWith("set") && method.getParameterTypes().length == 1) {
+                    propertyName = getPropertyName(name, 3);
+                    type = method.getGenericParameterTypes()[0];
+                    getter = false;
+                } else {
+                    continue;
+                }
+                if (propertyName == null) {
+                    return false;
+                }
+                Property property = properties.get(propertyName);
+                if (property == null) {
+                    property = new Property(propertyName, type);
+                    properties.put(propertyName, property);
+                } else if (!property.type.equals(type)) {
+                    return false;
+                }
+                if (getter) {
+                    if (property.getter != null) {
+                        return false;
+                    }
+                    property.getter = method;
+                } else {
+                    if (property.setter != null) {
+                        return false;
+                    }
+                    property.setter = method;
+                }
+            }
+            List<Property> ordered = new ArrayList<Property>();
+            for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
+                Field[] fields = c.getDeclaredFields();
+                for (int i = 0; i < fields.length; i++) {
+                    Property property = properties.get(fields[i].getName());
+                    if (property != null && !ordered.contains(property)) {
+                        ordered.add(property);
+                    }
+                }
+            }
+            for (Property property : properties.values()) {
+                if (!ordered.contains(property)) {
+                    ordered.add(property);
+                }
+            }
+            List<Property> readableList = new ArrayList<Property>();
+            writable = new HashMap<String, Property>();
+            for (Property property : ordered) {
+                property.binding = TypeBinding.create(property.type, created);
+                if (property.binding == null) {
+                    return false;
+                }
+                if (property.getter != null && !setAccessible(property.getter) || property.setter != null && !setAccessible(property.setter)) {
+                    return false;
+                }
+                if (property.getter != null) {
+                    readableList.add(property);
+                }
+                if (property.setter != null) {
+                    writable.put(property.name, property);
+                }
+            }
+            readable = readableList.toArray(new Property[readableList.size()]);
+            return true;
+        }
+
+        @Override
+        public Object read(JsonNode node) throws UnsupportedBindingException {
+            JsonNode.Type type = node.getNodeType();
+            if (type == JsonNode.Type.NULL) {
+                return null;
+            }
+            if (type != JsonNode.Type.OBJECT) {
+                throw UnsupportedBindingException.INSTANCE;
+            }
+            Object ret = invoke(constructor);
+            Iterator<String> it = node.getProperties();
+            while (it.hasNext()) {
+                String name = it.next();
+                Property property = writable.get(name);
+                if (property == null) {
+                    throw UnsupportedBindingException.INSTANCE;
+                }
+                invoke(property.setter, ret, new Object[]{property.binding.read(node.get(name))});
+            }
+            return ret;
+        }
+
+        @Override
+        void write(Object value, StringBuilder sb) throws UnsupportedBindingException {
+            if (value == null) {
+                sb.append("null");
+                return;
+            }
+            if (value.getClass() != clazz) {
+                throw UnsupportedBindingException.INSTANCE;
+            }
+            sb.append('{');
+            boolean first = true;
+            for (int i = 0; i < readable.length; i++) {
+                Property property = readable[i];
+                Object propertyValue = invoke(property.getter, value, null);
+                if (propertyValue == null) {
+                    continue;
+                }
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                quote(property.name, sb);
+                sb.append(':');
+                property.binding.write(propertyValue, sb);
+            }
+            sb.append('}');
+        }
+
+        @Override
+        BoundNode node(Object value) throws UnsupportedBindingException {
+            if (value == null) {
+                return BoundNode.NULL;
+            }
+            if (value.getClass() != clazz) {
+                throw UnsupportedBindingException.INSTANCE;
+            }
+            String[] names = new String[readable.length];
+            BoundNode[] values = new BoundNode[readable.length];
+            int size = 0;
+            for (int i = 0; i < readable.length; i++) {
+                Property property = readable[i];
+                Object propertyValue = invoke(property.getter, value, null);
+                if (propertyValue == null) {
+                    continue;
+                }
+                names[size] = property.name;
+                values[size++] = property.binding.node(propertyValue);
+            }
+            return BoundNode.object(names, values, size);
+        }
+
+        /**
+         * Suppresses the access checks of a member, so they are not performed
+         * per invocation.
+         *
+         * @return false if the member is not accessible (public member of a
+         * non-public class) and access checks can not be suppressed
+         */
+        private static boolean setAccessible(AccessibleObject member) {
+            try {
+                member.setAccessible(true);
+                return true;
+            } catch (SecurityException ex) {
+                return member instanceof Member && Modifier.isPublic(((Member) member).getDeclaringClass().getModifiers());
+            }
+        }
+
+        private static Object invoke(Constructor<?> constructor) throws UnsupportedBindingException {
+            try {
+                return constructor.newInstance();
+            } catch (InvocationTargetException ex) {
+                throw propagate(ex);
+            } catch (InstantiationException ex) {
+                throw UnsupportedBindingException.INSTANCE;
+            } catch (IllegalAccessException ex) {
+                throw UnsupportedBindingException.INSTANCE;
+            }
+        }
+
+        private static Object invoke(Method method, Object target, Object[] args) throws UnsupportedBindingException {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw propagate(ex);
+            } catch (IllegalAccessException ex) {
+                throw UnsupportedBindingException.INSTANCE;
+            }
+        }
+
+        /**
+         * Exceptions thrown by bean constructors and accessors are propagated
+         * as they are (checked exceptions wrapped in a runtime exception), as
+         * the codec fallback would invoke them again.
+         */
+        private static RuntimeException propagate(InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                return (RuntimeException) cause;
+            }
+            return new RuntimeException(cause);
+        }
+
+        private static boolean isAnnotated(AnnotatedElement element) {
+            return element.getAnnotations().length > 0;
+        }
+
+        /**
+         * @return property name, or null if its derivation from the accessor
+         * name is ambiguous
+         */
+        private static String getPropertyName(String methodName, int prefixLength) {
+            if (methodName.length() == prefixLength) {
+                return null;
+            }
+            char first = methodName.charAt(prefixLength);
+            if (!Character.isUpperCase(first)) {
+                return null;
+            }
+            if (methodName.length() > prefixLength + 1 && !Character.isLowerCase(methodName.charAt(prefixLength + 1))) {
+                return null;
+            }
+            return Character.toLowerCase(first) + methodName.substring(prefixLength + 1);
+        }
+    }
+
+    private static final class Property {
+
+        private final String name;
+        private final Type type;
+        private Method getter;
+        private Method setter;
+        private TypeBinding binding;
+
+        Property(String name, Type type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+}
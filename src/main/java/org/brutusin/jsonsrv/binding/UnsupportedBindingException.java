@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.binding;
+
+/**
+ * Signals that a value can not be handled by a {@link TypeBinding}, and has to
+ * be processed by the JSON SPI codec instead.
+ * <br/><br/>
+ * Being part of the normal control flow, a single stackless instance is used.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class UnsupportedBindingException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    static final UnsupportedBindingException INSTANCE = new UnsupportedBindingException();
+
+    private UnsupportedBindingException() {
+        super("Value not supported by the binding");
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+/**
+ * Validity rules of the cached entries, shared by the byte-oriented cache
+ * implementations.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+final class CacheEntries {
+
+    /**
+     * Expiration of entries revalidated by their etag
+     */
+    static final long NO_EXPIRATION = Long.MAX_VALUE;
+
+    private CacheEntries() {
+    }
+
+    /**
+     * @return etag of the caching info, or {@code null} if not conditional
+     */
+    static String getEtag(CachingInfo cachingInfo) {
+        if (cachingInfo instanceof ConditionalCachingInfo) {
+            return ((ConditionalCachingInfo) cachingInfo).getEtag();
+        }
+        return null;
+    }
+
+    /**
+     * @return expiration time of an entry stored now, or -1 if the caching info
+     * does not allow storing the entry
+     */
+    static long getExpiration(CachingInfo cachingInfo, long now) {
+        if (cachingInfo instanceof ConditionalCachingInfo) {
+            return ((ConditionalCachingInfo) cachingInfo).getEtag() == null ? -1 : NO_EXPIRATION;
+        } else if (cachingInfo instanceof ExpiringCachingInfo) {
+            return now + ((ExpiringCachingInfo) cachingInfo).getMaxAge() * 1000L;
+        } else {
+            return -1;
+        }
+    }
+
+    static boolean isValid(String etag, long expiration, CachingInfo cachingInfo, long now) {
+        if (now >= expiration) {
+            return false;
+        }
+        if (etag == null) {
+            return cachingInfo instanceof ExpiringCachingInfo;
+        }
+        return cachingInfo instanceof ConditionalCachingInfo && etag.equals(((ConditionalCachingInfo) cachingInfo).getEtag());
+    }
+
+    /**
+     * Hash of a body, used to check that an encoded variant corresponds to
+     * the body held by the caller.
+     */
+    static int hash(byte[] body) {
+        int h = body.length;
+        for (int i = 0; i < body.length; i++) {
+            h = 31 * h + body[i];
+        }
+        return h;
+    }
+}
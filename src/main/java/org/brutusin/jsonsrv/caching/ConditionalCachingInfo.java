@@ -16,17 +16,37 @@
 package org.brutusin.jsonsrv.caching;
 
 /**
+ * Caching information of responses that can be revalidated by their entity
+ * tag. Optionally, a TTL can be given for the etag, letting the framework reuse
+ * it (see {@link EtagRegistry}) during that time without calling
+ * <code>getCachingInfo(..)</code> again.
  *
  * @author Ignacio del Valle Alles idelvall@brutusin.org
  */
-public final class ConditionalCachingInfo implements CachingInfo{
+public final class ConditionalCachingInfo implements CachingInfo {
 
     private final String etag;
+    private final long etagTtl;
 
     public ConditionalCachingInfo(String etag) {
+        this(etag, 0);
+    }
+
+    /**
+     * @param etag
+     * @param etagTtl time in milliseconds the etag can be reused without
+     * calling the action, unless invalidated in the {@link EtagRegistry}
+     */
+    public ConditionalCachingInfo(String etag, long etagTtl) {
         this.etag = etag;
+        this.etagTtl = etagTtl;
     }
+
     public String getEtag() {
         return etag;
     }
+
+    public long getEtagTtl() {
+        return etagTtl;
+    }
 }
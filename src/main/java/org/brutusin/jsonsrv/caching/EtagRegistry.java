@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.brutusin.commons.json.ParseException;
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
+import org.brutusin.jsonsrv.binding.TypeBinding;
+import org.brutusin.jsonsrv.binding.UnsupportedBindingException;
+import org.brutusin.jsonsrv.utils.CanonicalHash;
+
+/**
+ * In-memory registry of the last {@link ConditionalCachingInfo} returned by
+ * safe actions, by service id and input. While a registered entry is valid
+ * (see {@link ConditionalCachingInfo#getEtagTtl()}), the framework servlet
+ * uses it instead of calling <code>getCachingInfo(..)</code>, so conditional
+ * requests are answered with <code>304 (Not Modified)</code> (and cached
+ * responses are served) without calling into the action.
+ * <br/><br/>Entries can also be registered under aliases (see
+ * {@link #putAlias(String, String)}), that resolve to the current entry of
+ * their target key, so invalidating the target invalidates them too.
+ * <br/><br/>Applications publish version changes by invalidating the entries
+ * affected, so the next request calls the action again.
+ * <br/><br/><b>Threading issues</b>: The registry is split in lock-striped
+ * segments, each one bounded and evicting its least recently used entries.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class EtagRegistry {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param maxEntries maximum number of entries held
+     */
+    public EtagRegistry(int maxEntries) {
+        int segmentSize = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Returns the key of an invocation, from the tree of its input. Keys are
+     * formed by the service id and the {@link CanonicalHash} of the tree, so
+     * they do not depend on formatting (whitespace, property order, number
+     * notation). This is the key computed by the framework for the etag
+     * registry, the server-side response cache and request coalescing, from
+     * the tree of the bound input (see
+     * {@link org.brutusin.jsonsrv.JsonService#getKeyNode(Object, JsonNode)}),
+     * without serializing it.
+     *
+     * @param serviceId
+     * @param inputNode
+     * @return
+     */
+    public static String getKey(String serviceId, JsonNode inputNode) {
+        return serviceId + "\n" + CanonicalHash.hashHex(inputNode);
+    }
+
+    /**
+     * Returns the key of an invocation, being the input the object received by
+     * the action (or its JSON tree). The tree of the input is obtained through
+     * a {@link TypeBinding} of its class, as the framework does, or by the
+     * serialization of the JSON codec if not supported, so this is only meant
+     * for the infrequent invalidation path. Inputs bound by the codec are
+     * keyed by the request tree, so their entries are matched as long as the
+     * requests do not contain members ignored by the binding or defaulted
+     * ones.
+     *
+     * @param serviceId
+     * @param input
+     * @return
+     */
+    public static String getKey(String serviceId, Object input) {
+        if (input == null || input instanceof JsonNode) {
+            return getKey(serviceId, (JsonNode) input);
+        }
+        TypeBinding binding = TypeBinding.create(input.getClass());
+        if (binding != null) {
+            try {
+                return getKey(serviceId, binding.toNode(input));
+            } catch (UnsupportedBindingException ex) {
+                // serialized by the codec
+            }
+        }
+        try {
+            return getKey(serviceId, JsonCodec.getInstance().parse(JsonCodec.getInstance().transform(input)));
+        } catch (ParseException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param key
+     * @return the registered caching info, or {@code null} if not present or
+     * expired
+     */
+    public ConditionalCachingInfo get(String key) {
+        long now = System.currentTimeMillis();
+        Entry entry = segmentFor(key).get(key, now);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.target != null) {
+            entry = segmentFor(entry.target).get(entry.target, now);
+            if (entry == null || entry.target != null) {
+                return null;
+            }
+        }
+        return entry.cachingInfo;
+    }
+
+    /**
+     * Registers an alias of a key. Aliases are bounded by the size of the
+     * registry as any other entry, and expire with the entry of their target.
+     *
+     * @param alias
+     * @param key
+     */
+    public void putAlias(String alias, String key) {
+        segmentFor(alias).put(alias, new Entry(null, key, Long.MAX_VALUE));
+    }
+
+    /**
+     * Registers the caching info for the key, if it has a positive etag TTL.
+     *
+     * @param key
+     * @param cachingInfo
+     */
+    public void put(String key, ConditionalCachingInfo cachingInfo) {
+        if (cachingInfo.getEtagTtl() > 0) {
+            segmentFor(key).put(key, new Entry(cachingInfo, null, System.currentTimeMillis() + cachingInfo.getEtagTtl()));
+        }
+    }
+
+    /**
+     * Invalidates the entry of an invocation.
+     *
+     * @param serviceId
+     * @param input
+     */
+    public void invalidate(String serviceId, Object input) {
+        String key = getKey(serviceId, input);
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * Invalidates all the entries of a service.
+     *
+     * @param serviceId
+     */
+    public void invalidate(String serviceId) {
+        String prefix = serviceId + "\n";
+        for (Segment segment : segments) {
+            segment.removeAll(prefix);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.removeAll("");
+        }
+    }
+
+    /**
+     * @return current number of entries
+     */
+    public int getSize() {
+        int ret = 0;
+        for (Segment segment : segments) {
+            ret += segment.size();
+        }
+        return ret;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private static final class Entry {
+
+        private final ConditionalCachingInfo cachingInfo;
+        private final String target;
+        private final long expiration;
+
+        Entry(ConditionalCachingInfo cachingInfo, String target, long expiration) {
+            this.cachingInfo = cachingInfo;
+            this.target = target;
+            this.expiration = expiration;
+        }
+    }
+
+    private static final class Segment {
+
+        private final int maxEntries;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        synchronized Entry get(String key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiration <= now) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        synchronized void put(String key, Entry entry) {
+            entries.put(key, entry);
+            if (entries.size() > maxEntries) {
+                Iterator<String> it = entries.keySet().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+
+        synchronized void remove(String key) {
+            entries.remove(key);
+        }
+
+        synchronized void removeAll(String prefix) {
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().getKey().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
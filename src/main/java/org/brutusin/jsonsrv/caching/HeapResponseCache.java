@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process {@link ResponseCache} bounded both in number of entries and in
+ * bytes, evicting least recently used entries first.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class HeapResponseCache extends ResponseCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long byteSize;
+
+    public HeapResponseCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum byte size must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public byte[] get(String key, CachingInfo cachingInfo) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (CacheEntries.isValid(entry.etag, entry.expiration, cachingInfo, System.currentTimeMillis())) {
+                    hits.incrementAndGet();
+                    return entry.body;
+                }
+                remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public void put(String key, CachingInfo cachingInfo, byte[] body) {
+        long expiration = CacheEntries.getExpiration(cachingInfo, System.currentTimeMillis());
+        if (expiration < 0 || body.length > maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(body, CacheEntries.getEtag(cachingInfo), expiration);
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                byteSize -= previous.byteSize;
+            }
+            byteSize += entry.byteSize;
+            evict();
+        }
+    }
+
+    @Override
+    public byte[] getEncoded(String key, byte[] body, String contentCoding) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.body != body || entry.encoded == null) {
+                return null;
+            }
+            return entry.encoded.get(contentCoding);
+        }
+    }
+
+    @Override
+    public void putEncoded(String key, byte[] body, String contentCoding, byte[] encoded) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.body != body) {
+                return;
+            }
+            if (entry.encoded == null) {
+                entry.encoded = new HashMap<String, byte[]>(2);
+            }
+            byte[] previous = entry.encoded.put(contentCoding, encoded);
+            if (previous != null) {
+                entry.byteSize -= previous.length;
+                byteSize -= previous.length;
+            }
+            entry.byteSize += encoded.length;
+            byteSize += encoded.length;
+            evict();
+        }
+    }
+
+    @Override
+    public int removeAll(String keyPrefix) {
+        int ret = 0;
+        synchronized (entries) {
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> mapEntry = it.next();
+                if (mapEntry.getKey().startsWith(keyPrefix)) {
+                    it.remove();
+                    byteSize -= mapEntry.getValue().byteSize;
+                    ret++;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || byteSize > maxBytes) && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            byteSize -= eldest.byteSize;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            byteSize -= removed.byteSize;
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public long getByteSize() {
+        synchronized (entries) {
+            return byteSize;
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[] body;
+        private final String etag;
+        private final long expiration;
+        private Map<String, byte[]> encoded;
+        private long byteSize;
+
+        private Entry(byte[] body, String etag, long expiration) {
+            this.body = body;
+            this.byteSize = body.length;
+            this.etag = etag;
+            this.expiration = expiration;
+        }
+    }
+}
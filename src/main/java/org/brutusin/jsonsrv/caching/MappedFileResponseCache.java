@@ -0,0 +1,491 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ResponseCache} stored in a memory-mapped file, that can be shared by
+ * the JVMs running in the same host (by configuring the same file), and
+ * survives restarts.
+ * <br/><br/><b>File layout</b>: A header, an index of fixed-size slots
+ * (addressed by a 64-bit hash of the key, with linear probing) and a data
+ * region used as a circular log where records (key, etag and body) are
+ * appended. Records overwritten by the log are detected by their absolute
+ * position, and evicted lazily. When all the probed slots are in use, the
+ * oldest one is reused.
+ * <br/><br/><b>Threading issues</b>: Operations are serialized within the JVM,
+ * and across processes by an exclusive lock of the file. A file must be opened
+ * by a single instance per JVM. The file is limited to 2 GB.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class MappedFileResponseCache extends ResponseCache implements Closeable {
+
+    private static final int MAGIC = 0x4a53524d; // "JSRM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int PROBES = 8;
+    // header offsets
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int HEAD_OFFSET = 24;
+    // slot offsets
+    private static final int HASH_OFFSET = 0;
+    private static final int POSITION_OFFSET = 8;
+    private static final int EXPIRATION_OFFSET = 16;
+    private static final int LENGTH_OFFSET = 24;
+    private static final int BODY_HASH_OFFSET = 28;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int dataOffset;
+    private final long capacity;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Opens the cache file, creating or reinitializing it if it does not have
+     * the required layout.
+     *
+     * @param path
+     * @param maxEntries
+     * @param maxBytes size of the data region
+     * @throws IOException
+     */
+    public MappedFileResponseCache(File path, int maxEntries, long maxBytes) throws IOException {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum byte size must be positive");
+        }
+        int slots = 16;
+        while (slots < 2 * maxEntries) {
+            slots <<= 1;
+        }
+        this.slotCount = slots;
+        this.dataOffset = HEADER_SIZE + slotCount * SLOT_SIZE;
+        this.capacity = Math.min(maxBytes, Integer.MAX_VALUE - dataOffset);
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+        FileLock lock = channel.lock();
+        try {
+            boolean valid = file.length() == dataOffset + capacity;
+            if (file.length() != dataOffset + capacity) {
+                file.setLength(dataOffset + capacity);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset + capacity);
+            valid = valid && buffer.getInt(MAGIC_OFFSET) == MAGIC && buffer.getInt(VERSION_OFFSET) == VERSION && buffer.getInt(SLOTS_OFFSET) == slotCount && buffer.getLong(CAPACITY_OFFSET) == capacity;
+            if (!valid) {
+                for (int i = 0; i < dataOffset; i += 8) {
+                    buffer.putLong(i, 0);
+                }
+                buffer.putInt(VERSION_OFFSET, VERSION);
+                buffer.putInt(SLOTS_OFFSET, slotCount);
+                buffer.putLong(CAPACITY_OFFSET, capacity);
+                buffer.putLong(HEAD_OFFSET, 0);
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public byte[] get(String key, CachingInfo cachingInfo) {
+        byte[] ret = null;
+        try {
+            synchronized (this) {
+                FileLock lock = channel.lock();
+                try {
+                    byte[] keyBytes = key.getBytes("UTF-8");
+                    int slot = find(keyBytes, hash(keyBytes));
+                    if (slot >= 0) {
+                        int slotOffset = slotOffset(slot);
+                        Record record = readRecord(buffer.getLong(slotOffset + POSITION_OFFSET) - 1);
+                        if (CacheEntries.isValid(record.etag, buffer.getLong(slotOffset + EXPIRATION_OFFSET), cachingInfo, System.currentTimeMillis())) {
+                            ret = record.body;
+                        } else {
+                            clear(slot);
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        if (ret != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return ret;
+    }
+
+    @Override
+    public void put(String key, CachingInfo cachingInfo, byte[] body) {
+        long expiration = CacheEntries.getExpiration(cachingInfo, System.currentTimeMillis());
+        if (expiration >= 0) {
+            store(key, CacheEntries.getEtag(cachingInfo), body, expiration, 0);
+        }
+    }
+
+    @Override
+    public byte[] getEncoded(String key, byte[] body, String contentCoding) {
+        try {
+            synchronized (this) {
+                FileLock lock = channel.lock();
+                try {
+                    byte[] keyBytes = getVariantKey(key, contentCoding).getBytes("UTF-8");
+                    int slot = find(keyBytes, hash(keyBytes));
+                    if (slot < 0) {
+                        return null;
+                    }
+                    int slotOffset = slotOffset(slot);
+                    if (buffer.getInt(slotOffset + BODY_HASH_OFFSET) != CacheEntries.hash(body) || System.currentTimeMillis() >= buffer.getLong(slotOffset + EXPIRATION_OFFSET)) {
+                        return null;
+                    }
+                    return readRecord(buffer.getLong(slotOffset + POSITION_OFFSET) - 1).body;
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public void putEncoded(String key, byte[] body, String contentCoding, byte[] encoded) {
+        long expiration;
+        try {
+            synchronized (this) {
+                FileLock lock = channel.lock();
+                try {
+                    byte[] keyBytes = key.getBytes("UTF-8");
+                    int slot = find(keyBytes, hash(keyBytes));
+                    if (slot < 0) {
+                        return;
+                    }
+                    expiration = buffer.getLong(slotOffset(slot) + EXPIRATION_OFFSET);
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        // variants are bound to the body by its hash, and expire with the entry
+        store(getVariantKey(key, contentCoding), null, encoded, expiration, CacheEntries.hash(body));
+    }
+
+    @Override
+    public int removeAll(String keyPrefix) {
+        int ret = 0;
+        try {
+            byte[] prefix = keyPrefix.getBytes("UTF-8");
+            synchronized (this) {
+                FileLock lock = channel.lock();
+                try {
+                    long head = buffer.getLong(HEAD_OFFSET);
+                    for (int slot = 0; slot < slotCount; slot++) {
+                        long position = buffer.getLong(slotOffset(slot) + POSITION_OFFSET) - 1;
+                        if (isLive(position, head) && startsWith(position, prefix)) {
+                            clear(slot);
+                            ret++;
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return ret;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public int getSize() {
+        int ret = 0;
+        try {
+            synchronized (this) {
+                FileLock lock = channel.lock();
+                try {
+                    long head = buffer.getLong(HEAD_OFFSET);
+                    for (int slot = 0; slot < slotCount; slot++) {
+                        if (isLive(buffer.getLong(slotOffset(slot) + POSITION_OFFSET) - 1, head)) {
+                            ret++;
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return ret;
+    }
+
+    @Override
+    public long getByteSize() {
+        long ret = 0;
+        try {
+            synchronized (this) {
+                FileLock lock = channel.lock();
+                try {
+                    long head = buffer.getLong(HEAD_OFFSET);
+                    for (int slot = 0; slot < slotCount; slot++) {
+                        int slotOffset = slotOffset(slot);
+                        if (isLive(buffer.getLong(slotOffset + POSITION_OFFSET) - 1, head)) {
+                            ret += buffer.getInt(slotOffset + LENGTH_OFFSET);
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private void store(String key, String etag, byte[] body, long expiration, int bodyHash) {
+        try {
+            byte[] keyBytes = key.getBytes("UTF-8");
+            byte[] etagBytes = etag == null ? null : etag.getBytes("UTF-8");
+            int length = 12 + keyBytes.length + (etagBytes == null ? 0 : etagBytes.length) + body.length;
+            if (length > capacity) {
+                return;
+            }
+            long hash = hash(keyBytes);
+            synchronized (this) {
+                FileLock lock = channel.lock();
+                try {
+                    long position = buffer.getLong(HEAD_OFFSET);
+                    long physical = position % capacity;
+                    if (physical + length > capacity) {
+                        // records do not wrap around the end of the region
+                        position += capacity - physical;
+                        physical = 0;
+                    }
+                    ByteBuffer bb = buffer.duplicate();
+                    bb.position((int) (dataOffset + physical));
+                    bb.putInt(keyBytes.length);
+                    bb.put(keyBytes);
+                    if (etagBytes == null) {
+                        bb.putInt(-1);
+                    } else {
+                        bb.putInt(etagBytes.length);
+                        bb.put(etagBytes);
+                    }
+                    bb.putInt(body.length);
+                    bb.put(body);
+                    long head = position + length;
+                    buffer.putLong(HEAD_OFFSET, head);
+                    int slot = findSlotToWrite(keyBytes, hash, head);
+                    int slotOffset = slotOffset(slot);
+                    buffer.putLong(slotOffset + HASH_OFFSET, hash);
+                    buffer.putLong(slotOffset + EXPIRATION_OFFSET, expiration);
+                    buffer.putInt(slotOffset + LENGTH_OFFSET, length);
+                    buffer.putInt(slotOffset + BODY_HASH_OFFSET, bodyHash);
+                    // stored +1, so 0 means empty
+                    buffer.putLong(slotOffset + POSITION_OFFSET, position + 1);
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return slot of the live entry with the key, or -1 if not found
+     */
+    private int find(byte[] keyBytes, long hash) {
+        long head = buffer.getLong(HEAD_OFFSET);
+        int start = (int) (hash & (slotCount - 1));
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (start + i) & (slotCount - 1);
+            int slotOffset = slotOffset(slot);
+            if (buffer.getLong(slotOffset + HASH_OFFSET) == hash) {
+                long position = buffer.getLong(slotOffset + POSITION_OFFSET) - 1;
+                if (!isLive(position, head)) {
+                    clear(slot);
+                    evictions.incrementAndGet();
+                } else if (keyEquals(position, keyBytes)) {
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot to store an entry: the one with the same key, a free
+     * one, or the oldest one.
+     */
+    private int findSlotToWrite(byte[] keyBytes, long hash, long head) {
+        int start = (int) (hash & (slotCount - 1));
+        int free = -1;
+        int oldest = start;
+        long oldestPosition = Long.MAX_VALUE;
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (start + i) & (slotCount - 1);
+            int slotOffset = slotOffset(slot);
+            long position = buffer.getLong(slotOffset + POSITION_OFFSET) - 1;
+            if (!isLive(position, head)) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (buffer.getLong(slotOffset + HASH_OFFSET) == hash && keyEquals(position, keyBytes)) {
+                return slot;
+            } else if (position < oldestPosition) {
+                oldest = slot;
+                oldestPosition = position;
+            }
+        }
+        if (free >= 0) {
+            return free;
+        }
+        evictions.incrementAndGet();
+        return oldest;
+    }
+
+    /**
+     * A record is live if it has not been overwritten by the circular log.
+     */
+    private boolean isLive(long position, long head) {
+        return position >= 0 && position >= head - capacity;
+    }
+
+    private void clear(int slot) {
+        buffer.putLong(slotOffset(slot) + POSITION_OFFSET, 0);
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private boolean keyEquals(long position, byte[] keyBytes) {
+        int offset = (int) (dataOffset + position % capacity);
+        if (buffer.getInt(offset) != keyBytes.length) {
+            return false;
+        }
+        return startsWith(position, keyBytes);
+    }
+
+    private boolean startsWith(long position, byte[] prefix) {
+        int offset = (int) (dataOffset + position % capacity);
+        int keyLength = buffer.getInt(offset);
+        if (keyLength < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + 4 + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Record readRecord(long position) throws UnsupportedEncodingException {
+        ByteBuffer bb = buffer.duplicate();
+        bb.position((int) (dataOffset + position % capacity));
+        int keyLength = bb.getInt();
+        bb.position(bb.position() + keyLength);
+        int etagLength = bb.getInt();
+        String etag = null;
+        if (etagLength >= 0) {
+            byte[] etagBytes = new byte[etagLength];
+            bb.get(etagBytes);
+            etag = new String(etagBytes, "UTF-8");
+        }
+        byte[] body = new byte[bb.getInt()];
+        bb.get(body);
+        return new Record(etag, body);
+    }
+
+    private static String getVariantKey(String key, String contentCoding) {
+        return key + "\u0000" + contentCoding;
+    }
+
+    /**
+     * 64-bit FNV-1a hash
+     */
+    private static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < bytes.length; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static final class Record {
+
+        private final String etag;
+        private final byte[] body;
+
+        Record(String etag, byte[] body) {
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+}
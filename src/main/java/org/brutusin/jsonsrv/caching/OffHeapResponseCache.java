@@ -0,0 +1,277 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ResponseCache} storing the bodies out of the Java heap, in direct
+ * {@link ByteBuffer} slabs, so large caches do not increase the garbage
+ * collection work. Only the index (keys and entry locations) lives in the heap.
+ * <br/><br/>Bodies are appended to the current slab. When it is full, writing
+ * continues in the next one (in circular order), evicting all the entries it
+ * held, so eviction is FIFO with the granularity of a slab. Slabs are
+ * allocated on first use. Bodies larger than a slab are not cached.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class OffHeapResponseCache extends ResponseCache {
+
+    private static final int SLABS = 16;
+
+    private final int maxEntries;
+    private final int slabSize;
+    private final ByteBuffer[] slabs = new ByteBuffer[SLABS];
+    private final List<List<String>> slabKeys = new ArrayList<List<String>>(SLABS);
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<String, Entry>();
+    private int currentSlab;
+    private int writeOffset;
+    private long byteSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public OffHeapResponseCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum byte size must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.slabSize = (int) Math.min(Integer.MAX_VALUE, (maxBytes + SLABS - 1) / SLABS);
+        for (int i = 0; i < SLABS; i++) {
+            slabKeys.add(new ArrayList<String>());
+        }
+    }
+
+    @Override
+    public synchronized byte[] get(String key, CachingInfo cachingInfo) {
+        Entry entry = index.get(key);
+        if (entry != null) {
+            if (CacheEntries.isValid(entry.etag, entry.expiration, cachingInfo, System.currentTimeMillis())) {
+                hits.incrementAndGet();
+                return read(entry.location);
+            }
+            remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public synchronized void put(String key, CachingInfo cachingInfo, byte[] body) {
+        long expiration = CacheEntries.getExpiration(cachingInfo, System.currentTimeMillis());
+        if (expiration < 0 || body.length > slabSize) {
+            return;
+        }
+        remove(key);
+        Location location = write(key, body);
+        Entry entry = new Entry(location, CacheEntries.getEtag(cachingInfo), expiration, CacheEntries.hash(body));
+        index.put(key, entry);
+        byteSize += body.length;
+        if (index.size() > maxEntries) {
+            Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+            Entry eldest = it.next().getValue();
+            it.remove();
+            byteSize -= eldest.getByteSize();
+            evictions.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized byte[] getEncoded(String key, byte[] body, String contentCoding) {
+        Entry entry = index.get(key);
+        if (entry == null || entry.encoded == null) {
+            return null;
+        }
+        Location location = entry.encoded.get(contentCoding);
+        if (location == null || entry.bodyHash != CacheEntries.hash(body)) {
+            return null;
+        }
+        return read(location);
+    }
+
+    @Override
+    public synchronized void putEncoded(String key, byte[] body, String contentCoding, byte[] encoded) {
+        Entry entry = index.get(key);
+        if (entry == null || encoded.length > slabSize || entry.bodyHash != CacheEntries.hash(body)) {
+            return;
+        }
+        Location location = write(key, encoded);
+        // the write can recycle the slab of the entry
+        if (index.get(key) != entry) {
+            return;
+        }
+        if (entry.encoded == null) {
+            entry.encoded = new HashMap<String, Location>();
+        }
+        Location previous = entry.encoded.put(contentCoding, location);
+        if (previous != null) {
+            byteSize -= previous.length;
+        }
+        byteSize += encoded.length;
+    }
+
+    @Override
+    public synchronized int removeAll(String keyPrefix) {
+        int ret = 0;
+        Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> mapEntry = it.next();
+            if (mapEntry.getKey().startsWith(keyPrefix)) {
+                it.remove();
+                byteSize -= mapEntry.getValue().getByteSize();
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    private void remove(String key) {
+        Entry removed = index.remove(key);
+        if (removed != null) {
+            byteSize -= removed.getByteSize();
+        }
+    }
+
+    private byte[] read(Location location) {
+        byte[] ret = new byte[location.length];
+        ByteBuffer bb = slabs[location.slab].duplicate();
+        bb.position(location.offset);
+        bb.get(ret);
+        return ret;
+    }
+
+    private Location write(String key, byte[] data) {
+        if (slabs[currentSlab] == null || writeOffset + data.length > slabSize) {
+            if (slabs[currentSlab] != null) {
+                currentSlab = (currentSlab + 1) % SLABS;
+                writeOffset = 0;
+                recycle(currentSlab);
+            }
+            if (slabs[currentSlab] == null) {
+                slabs[currentSlab] = ByteBuffer.allocateDirect(slabSize);
+            }
+        }
+        ByteBuffer bb = slabs[currentSlab].duplicate();
+        bb.position(writeOffset);
+        bb.put(data);
+        Location ret = new Location(currentSlab, writeOffset, data.length);
+        writeOffset += data.length;
+        slabKeys.get(currentSlab).add(key);
+        return ret;
+    }
+
+    /**
+     * Evicts the entries and variants stored in the slab, before overwriting
+     * it.
+     */
+    private void recycle(int slab) {
+        for (String key : slabKeys.get(slab)) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.location.slab == slab) {
+                remove(key);
+                evictions.incrementAndGet();
+            } else if (entry.encoded != null) {
+                Iterator<Location> it = entry.encoded.values().iterator();
+                while (it.hasNext()) {
+                    Location location = it.next();
+                    if (location.slab == slab) {
+                        it.remove();
+                        byteSize -= location.length;
+                    }
+                }
+            }
+        }
+        slabKeys.get(slab).clear();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized long getByteSize() {
+        return byteSize;
+    }
+
+    private static final class Location {
+
+        private final int slab;
+        private final int offset;
+        private final int length;
+
+        Location(int slab, int offset, int length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Location location;
+        private final String etag;
+        private final long expiration;
+        private final int bodyHash;
+        private Map<String, Location> encoded;
+
+        Entry(Location location, String etag, long expiration, int bodyHash) {
+            this.location = location;
+            this.etag = etag;
+            this.expiration = expiration;
+            this.bodyHash = bodyHash;
+        }
+
+        long getByteSize() {
+            long ret = location.length;
+            if (encoded != null) {
+                for (Location variant : encoded.values()) {
+                    ret += variant.length;
+                }
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+/**
+ * Server-side cache of serialized responses of safe actions. Entries are keyed
+ * by service id and canonical input, and are valid according to the
+ * {@link CachingInfo} of the request that stored them:
+ * <ul>
+ * <li>{@link ExpiringCachingInfo}: Until <code>max-age</code> seconds have
+ * elapsed since storage.</li>
+ * <li>{@link ConditionalCachingInfo}: While the etag returned for the request
+ * equals the one of the stored entry.</li>
+ * </ul>
+ * <br/><b>Threading issues</b>: Implementations must be thread-safe.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public abstract class ResponseCache {
+
+    /**
+     * Returns the cached body for the key, if present and still valid for the
+     * current caching information, or {@code null} otherwise.
+     *
+     * @param key
+     * @param cachingInfo
+     * @return
+     */
+    public abstract byte[] get(String key, CachingInfo cachingInfo);
+
+    /**
+     * Stores the body.
+     *
+     * @param key
+     * @param cachingInfo
+     * @param body UTF-8 representation of the response
+     */
+    public abstract void put(String key, CachingInfo cachingInfo, byte[] body);
+
+    /**
+     * Returns a content-coded variant (for example gzipped) of a cached body,
+     * previously stored by
+     * {@link #putEncoded(String, byte[], String, byte[])}. Default
+     * implementation does not store variants, and always returns
+     * {@code null}.
+     *
+     * @param key
+     * @param body body returned by {@link #get(String, CachingInfo)}
+     * @param contentCoding
+     * @return
+     */
+    public byte[] getEncoded(String key, byte[] body, String contentCoding) {
+        return null;
+    }
+
+    /**
+     * Stores a content-coded variant of a cached body. The variant is
+     * discarded if the entry no longer holds the given body instance.
+     *
+     * @param key
+     * @param body
+     * @param contentCoding
+     * @param encoded
+     */
+    public void putEncoded(String key, byte[] body, String contentCoding, byte[] encoded) {
+    }
+
+    /**
+     * Removes all the entries whose key starts with the given prefix.
+     *
+     * @param keyPrefix
+     * @return number of entries removed
+     */
+    public abstract int removeAll(String keyPrefix);
+
+    public abstract long getHits();
+
+    public abstract long getMisses();
+
+    public abstract long getEvictions();
+
+    /**
+     * @return current number of entries
+     */
+    public abstract int getSize();
+
+    /**
+     * @return current size of the cached bodies in bytes
+     */
+    public abstract long getByteSize();
+}
@@ -15,13 +15,20 @@
  */
 package org.brutusin.jsonsrv.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import javax.servlet.ServletConfig;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.brutusin.commons.json.ParseException;
+import org.brutusin.jsonsrv.JsonPayload;
 import org.brutusin.jsonsrv.JsonService;
 import org.brutusin.jsonsrv.JsonServlet;
 import org.brutusin.jsonsrv.plugin.Renderer;
+import org.brutusin.jsonsrv.utils.Cbor;
+import org.brutusin.jsonsrv.utils.DeflaterPool;
+import org.brutusin.jsonsrv.utils.JsonSrvUtils;
 
 /**
  *
@@ -30,7 +37,134 @@ import org.brutusin.jsonsrv.plugin.Renderer;
 public class DefaultRenderer extends Renderer {
 
     @Override
-    public void service(ServletConfig servletConfig, HttpServletRequest req, HttpServletResponse resp, String json, JsonServlet.SchemaMode schemaMode, JsonService service) throws IOException {
+    public void service(ServletConfig servletConfig, HttpServletRequest req, HttpServletResponse resp, String json, JsonServlet.SchemaMode schemaMode, JsonService<?, ?> service) throws IOException {
         resp.getWriter().print(json);
     }
+
+    @Override
+    public void service(ServletConfig servletConfig, HttpServletRequest req, HttpServletResponse resp, JsonPayload payload, JsonServlet.SchemaMode schemaMode, JsonService<?, ?> service) throws IOException {
+        resp.addHeader("Vary", "Accept");
+        // Streamed payloads are not materialized, so they are always rendered as JSON
+        if (!payload.isStreaming() && JsonSrvUtils.acceptsMediaType(req.getHeader("Accept"), Cbor.MEDIA_TYPE)) {
+            // Binary representation, already compact, so no content-coding is applied
+            resp.setContentType(Cbor.MEDIA_TYPE);
+            resp.setCharacterEncoding(null);
+            setVariantEtag(resp, payload, Cbor.ETAG_VARIANT);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(32, payload.getLength()));
+            try {
+                Cbor.fromJson(payload.toByteArray(), baos);
+            } catch (ParseException ex) {
+                throw new IOException(ex);
+            }
+            resp.setContentLength(baos.size());
+            baos.writeTo(resp.getOutputStream());
+            return;
+        }
+        String[] contentCodings = payload.getContentCodings();
+        if (contentCodings.length > 0) {
+            resp.addHeader("Vary", "Accept-Encoding");
+            String acceptEncoding = req.getHeader("Accept-Encoding");
+            for (int i = 0; i < contentCodings.length; i++) {
+                if (JsonSrvUtils.acceptsEncoding(acceptEncoding, contentCodings[i])) {
+                    byte[] encoded = payload.getEncoded(contentCodings[i]);
+                    if (encoded != null) {
+                        resp.setHeader("Content-Encoding", contentCodings[i]);
+                        setVariantEtag(resp, payload, contentCodings[i]);
+                        resp.setContentLength(encoded.length);
+                        resp.getOutputStream().write(encoded);
+                        return;
+                    }
+                    if (payload.getCompressionThreshold() >= 0 && payload.getDeflaterPool() != null && DeflaterPool.isSupported(contentCodings[i])) {
+                        CompressingOutputStream os = new CompressingOutputStream(resp, payload, contentCodings[i]);
+                        try {
+                            payload.writeTo(os);
+                            os.close();
+                        } finally {
+                            os.abort();
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+        if (payload.getLength() >= 0) {
+            resp.setContentLength(payload.getLength());
+        }
+        payload.writeTo(resp.getOutputStream());
+    }
+
+    /**
+     * Replaces the strong entity tag of the payload with the one of the
+     * representation actually sent.
+     */
+    private static void setVariantEtag(HttpServletResponse resp, JsonPayload payload, String variant) {
+        if (payload.getEtag() != null) {
+            resp.setHeader("ETag", JsonSrvUtils.getVariantEtag(payload.getEtag(), variant));
+        }
+    }
+
+    /**
+     * Buffers the payload up to its compression threshold. Payloads ending
+     * before are written as they are, with their length; otherwise the
+     * content-coding headers are set and the rest of the payload is
+     * compressed while being written, with a deflater of the pool of the
+     * payload.
+     */
+    private static final class CompressingOutputStream extends OutputStream {
+
+        private final HttpServletResponse resp;
+        private final JsonPayload payload;
+        private final String contentCoding;
+        private final byte[] buffer;
+        private int count;
+        private DeflaterPool.EncodingStream encoder;
+
+        CompressingOutputStream(HttpServletResponse resp, JsonPayload payload, String contentCoding) {
+            this.resp = resp;
+            this.payload = payload;
+            this.contentCoding = contentCoding;
+            this.buffer = new byte[payload.getCompressionThreshold()];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (encoder == null) {
+                if (count + len < buffer.length) {
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                resp.setHeader("Content-Encoding", contentCoding);
+                setVariantEtag(resp, payload, contentCoding);
+                encoder = payload.getDeflaterPool().openStream(resp.getOutputStream(), contentCoding);
+                encoder.write(buffer, 0, count);
+            }
+            encoder.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (encoder != null) {
+                encoder.close();
+            } else {
+                resp.setContentLength(count);
+                resp.getOutputStream().write(buffer, 0, count);
+            }
+        }
+
+        /**
+         * Returns the deflater to the pool if the payload could not be
+         * completely written.
+         */
+        void abort() {
+            if (encoder != null) {
+                encoder.abort();
+            }
+        }
+    }
 }
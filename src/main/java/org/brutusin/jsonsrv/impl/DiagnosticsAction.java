@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.impl;
+
+import org.brutusin.jsonsrv.JsonActionContext;
+import org.brutusin.jsonsrv.JsonServlet;
+import org.brutusin.jsonsrv.SafeAction;
+import org.brutusin.jsonsrv.metrics.Instrumentation;
+import org.brutusin.jsonsrv.metrics.SlowCallSampler;
+import org.brutusin.jsonsrv.metrics.SlowCallStats;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class DiagnosticsAction extends SafeAction<String, SlowCallStats[]> {
+
+    @Override
+    public SlowCallStats[] execute(String id) throws Exception {
+        Instrumentation instrumentation = ((JsonServlet) JsonActionContext.getInstance().getServlet()).getInstrumentation();
+        if (!(instrumentation instanceof SlowCallSampler)) {
+            throw new IllegalStateException("Slow call sampling is disabled");
+        }
+        SlowCallSampler sampler = (SlowCallSampler) instrumentation;
+        if (id == null) {
+            return sampler.getSlowCallStats();
+        }
+        SlowCallStats stats = sampler.getSlowCallStats(id);
+        if (stats == null) {
+            return new SlowCallStats[0];
+        }
+        return new SlowCallStats[]{stats};
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.impl;
+
+import org.brutusin.jsonsrv.JsonActionContext;
+import org.brutusin.jsonsrv.JsonServlet;
+import org.brutusin.jsonsrv.SafeAction;
+import org.brutusin.jsonsrv.metrics.MetricsRegistry;
+import org.brutusin.jsonsrv.metrics.ServiceStats;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class MetricsAction extends SafeAction<String, ServiceStats[]> {
+
+    @Override
+    public ServiceStats[] execute(String id) throws Exception {
+        MetricsRegistry metrics = ((JsonServlet) JsonActionContext.getInstance().getServlet()).getMetrics();
+        if (metrics == null) {
+            throw new IllegalStateException("Metrics are disabled");
+        }
+        if (id == null) {
+            return metrics.getServiceStats();
+        }
+        if (!metrics.containsService(id)) {
+            throw new IllegalArgumentException("Service not found: " + id);
+        }
+        return new ServiceStats[]{metrics.get(id).getStats()};
+    }
+}
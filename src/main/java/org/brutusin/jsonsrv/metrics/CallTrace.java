@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.metrics;
+
+/**
+ * Timing record of a service call, passed to the {@link Instrumentation}
+ * callbacks.
+ * <br/><br/><b>Threading issues</b>: A trace is updated by a single thread at
+ * a time (the request thread, or the thread completing an asynchronous
+ * execution), and must not be modified by instrumentations. Once ended, it is
+ * effectively immutable.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class CallTrace {
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String serviceId;
+    private final long timestamp = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final long[] phaseNanos = new long[PHASES.length];
+    private int inputSize = -1;
+    private Integer errorCode;
+    private boolean notModified;
+    private long totalNanos = -1;
+
+    public CallTrace(String serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    /**
+     * @return start time of the call, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return size of the input in characters, -1 if unknown
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public void setInputSize(int inputSize) {
+        this.inputSize = inputSize;
+    }
+
+    /**
+     * Adds the duration of a phase. Phases can be recorded more than once (for
+     * example, serialization of a cached response followed by rendering).
+     *
+     * @param phase
+     * @param nanos
+     */
+    public void record(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * @param phase
+     * @return accumulated duration of the phase in nanoseconds, 0 if not
+     * executed
+     */
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Marks the end of the call.
+     *
+     * @param errorCode error code of the response, {@code null} if successful
+     * @param notModified if a 304 (Not Modified) response was returned
+     */
+    public void end(Integer errorCode, boolean notModified) {
+        this.errorCode = errorCode;
+        this.notModified = notModified;
+        this.totalNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return {@code true} if the call has ended
+     */
+    public boolean isEnded() {
+        return totalNanos >= 0;
+    }
+
+    /**
+     * @return total duration of the call in nanoseconds, -1 if not ended
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public Integer getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+}
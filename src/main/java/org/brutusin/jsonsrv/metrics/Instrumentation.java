@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.metrics;
+
+/**
+ * Instrumentation SPI of the request processing of the framework servlet.
+ * Implementations receive a callback at the beginning and end of each
+ * {@link Phase} of a service call, and when the call ends, with a
+ * {@link CallTrace} holding the timings of the call so far.
+ * <br/><br/>Callbacks are invoked on the request path (and for asynchronous
+ * executions, on the thread completing them), so implementations must be
+ * thread-safe and fast. When no instrumentation is configured, no trace is
+ * created.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public interface Instrumentation {
+
+    /**
+     * Called when the processing of a service call begins.
+     *
+     * @param trace
+     */
+    public void beginCall(CallTrace trace);
+
+    /**
+     * Called before a phase begins.
+     *
+     * @param trace
+     * @param phase
+     */
+    public void beginPhase(CallTrace trace, Phase phase);
+
+    /**
+     * Called after a phase ends, once its duration has been added to the
+     * trace.
+     *
+     * @param trace
+     * @param phase
+     * @param nanos duration of the phase
+     */
+    public void endPhase(CallTrace trace, Phase phase, long nanos);
+
+    /**
+     * Called when the response of a call has been rendered.
+     *
+     * @param trace
+     */
+    public void endCall(CallTrace trace);
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the services of a framework servlet, by service id.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class MetricsRegistry implements MetricsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsRegistry.class.getName());
+
+    private final ConcurrentMap<String, ServiceMetrics> metrics = new ConcurrentHashMap<String, ServiceMetrics>();
+    private ObjectName objectName;
+
+    /**
+     * Returns the metrics of the service, creating them if needed.
+     *
+     * @param id
+     * @return
+     */
+    public ServiceMetrics get(String id) {
+        ServiceMetrics ret = metrics.get(id);
+        if (ret == null) {
+            ServiceMetrics newMetrics = new ServiceMetrics(id);
+            ret = metrics.putIfAbsent(id, newMetrics);
+            if (ret == null) {
+                ret = newMetrics;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Discards the metrics of a service no longer available.
+     *
+     * @param id
+     */
+    public void remove(String id) {
+        metrics.remove(id);
+    }
+
+    public boolean containsService(String id) {
+        return metrics.containsKey(id);
+    }
+
+    @Override
+    public String[] getServiceIds() {
+        return metrics.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public ServiceStats[] getServiceStats() {
+        List<ServiceStats> ret = new ArrayList<ServiceStats>();
+        for (ServiceMetrics sm : metrics.values()) {
+            ret.add(sm.getStats());
+        }
+        return ret.toArray(new ServiceStats[ret.size()]);
+    }
+
+    /**
+     * Registers this registry in the platform MBean server.
+     *
+     * @param name name of the servlet
+     */
+    public synchronized void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("org.brutusin.jsonsrv:type=Metrics,name=" + ObjectName.quote(name));
+            server.registerMBean(this, on);
+            this.objectName = on;
+        } catch (Exception ex) {
+            LOGGER.log(Level.WARNING, "Could not register metrics MBean for servlet " + name, ex);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception ex) {
+            LOGGER.log(Level.WARNING, null, ex);
+        } finally {
+            objectName = null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.metrics;
+
+/**
+ * Request processing phases whose latency is measured.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public enum Phase {
+
+    /**
+     * Parsing of the input JSON
+     */
+    PARSE,
+    /**
+     * Validation of the parsed input against the service input schema, and
+     * binding to the input class
+     */
+    VALIDATE,
+    /**
+     * Retrieval of the caching information of safe actions
+     * (<code>getCachingInfo(..)</code>)
+     */
+    CACHING_INFO,
+    /**
+     * Action execution
+     */
+    EXECUTE,
+    /**
+     * Serialization of the response, when performed before rendering (for
+     * example, to be cached)
+     */
+    SERIALIZE,
+    /**
+     * Response rendering. Includes the serialization of the response when
+     * streamed by the renderer
+     */
+    RENDER;
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.brutusin.jsonsrv.JsonResponse;
+
+/**
+ * Metrics of a service: invocation counts, error counts by error code, and
+ * latency histograms per processing phase.
+ * <br/><br/><b>Threading issues</b>: Instances are updated concurrently
+ * without locking.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class ServiceMetrics {
+
+    /**
+     * No-op instance, used when metrics are disabled
+     */
+    public static final ServiceMetrics DISABLED = new ServiceMetrics(null) {
+        @Override
+        public void recordCall(JsonResponse.Error error, boolean notModified) {
+        }
+
+        @Override
+        public void record(Phase phase, long nanos) {
+        }
+    };
+
+    private static final JsonResponse.Error[] ERRORS = JsonResponse.Error.values();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String id;
+    private final StripedCounter calls = new StripedCounter();
+    private final StripedCounter notModified = new StripedCounter();
+    private final StripedCounter[] errors = new StripedCounter[ERRORS.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[PHASES.length];
+
+    public ServiceMetrics(String id) {
+        this.id = id;
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = new StripedCounter();
+        }
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Records the outcome of an invocation.
+     *
+     * @param error error of the response, {@code null} if successful
+     * @param notModified if a 304 (Not Modified) response was returned
+     */
+    public void recordCall(JsonResponse.Error error, boolean notModified) {
+        calls.increment();
+        if (error != null) {
+            errors[error.ordinal()].increment();
+        } else if (notModified) {
+            this.notModified.increment();
+        }
+    }
+
+    /**
+     * Records the duration of a phase.
+     *
+     * @param phase
+     * @param nanos
+     */
+    public void record(Phase phase, long nanos) {
+        latencies[phase.ordinal()].recordNanos(nanos);
+    }
+
+    public LatencyHistogram getLatency(Phase phase) {
+        return latencies[phase.ordinal()];
+    }
+
+    public ServiceStats getStats() {
+        ServiceStats ret = new ServiceStats();
+        ret.setId(id);
+        ret.setCalls(calls.sum());
+        ret.setNotModified(notModified.sum());
+        List<ErrorStats> errorStats = new ArrayList<ErrorStats>();
+        for (int i = 0; i < ERRORS.length; i++) {
+            long count = errors[i].sum();
+            if (count > 0) {
+                ErrorStats es = new ErrorStats();
+                es.setCode(ERRORS[i].getCode());
+                es.setMessage(ERRORS[i].getName());
+                es.setCount(count);
+                errorStats.add(es);
+            }
+        }
+        ret.setErrors(errorStats.toArray(new ErrorStats[errorStats.size()]));
+        List<PhaseStats> phaseStats = new ArrayList<PhaseStats>();
+        for (int i = 0; i < PHASES.length; i++) {
+            LatencyHistogram histogram = latencies[i];
+            long count = histogram.getCount();
+            if (count > 0) {
+                PhaseStats ps = new PhaseStats();
+                ps.setPhase(PHASES[i].name());
+                ps.setCount(count);
+                ps.setMean(histogram.getTotal() / count);
+                ps.setP50(histogram.getPercentile(50));
+                ps.setP90(histogram.getPercentile(90));
+                ps.setP99(histogram.getPercentile(99));
+                ps.setMax(histogram.getMax());
+                phaseStats.add(ps);
+            }
+        }
+        ret.setPhases(phaseStats.toArray(new PhaseStats[phaseStats.size()]));
+        return ret;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.metrics;
+
+/**
+ * Snapshot of the metrics of a service.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class ServiceStats {
+
+    private String id;
+    private long calls;
+    private long notModified;
+    private ErrorStats[] errors;
+    private PhaseStats[] phases;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public void setCalls(long calls) {
+        this.calls = calls;
+    }
+
+    public long getNotModified() {
+        return notModified;
+    }
+
+    public void setNotModified(long notModified) {
+        this.notModified = notModified;
+    }
+
+    public ErrorStats[] getErrors() {
+        return errors;
+    }
+
+    public void setErrors(ErrorStats[] errors) {
+        this.errors = errors;
+    }
+
+    public PhaseStats[] getPhases() {
+        return phases;
+    }
+
+    public void setPhases(PhaseStats[] phases) {
+        this.phases = phases;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link Instrumentation} keeping, per service, a sample of the slowest calls
+ * of a recent time window, with their input size and phase breakdown. It also
+ * counts the calls exceeding a response-time objective (SLO), if set, in which
+ * case only those calls are sampled.
+ * <br/><br/><b>Threading issues</b>: Samples of each service are kept in a
+ * fixed-size array of slots, updated lock-free: a finished call replaces (by
+ * compare-and-set) the fastest sample, or a sample older than the window, if
+ * slower than it. Under contention a call may not be sampled.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class SlowCallSampler implements Instrumentation {
+
+    public static final long DEFAULT_WINDOW = 60000;
+
+    private static final int MAX_ATTEMPTS = 4;
+    private static final Phase[] PHASES = Phase.values();
+
+    private final int size;
+    private final long sloNanos;
+    private final long windowMillis;
+    private final ConcurrentMap<String, Samples> samples = new ConcurrentHashMap<String, Samples>();
+
+    /**
+     * @param size number of slow calls sampled per service
+     * @param sloMillis response-time objective in milliseconds, 0 for none
+     * @param windowMillis time after which samples can be replaced by faster
+     * calls
+     */
+    public SlowCallSampler(int size, long sloMillis, long windowMillis) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive");
+        }
+        this.size = size;
+        this.sloNanos = TimeUnit.MILLISECONDS.toNanos(sloMillis);
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    public void beginCall(CallTrace trace) {
+    }
+
+    @Override
+    public void beginPhase(CallTrace trace, Phase phase) {
+    }
+
+    @Override
+    public void endPhase(CallTrace trace, Phase phase, long nanos) {
+    }
+
+    @Override
+    public void endCall(CallTrace trace) {
+        Samples s = samples.get(trace.getServiceId());
+        if (s == null) {
+            s = new Samples(size);
+            Samples previous = samples.putIfAbsent(trace.getServiceId(), s);
+            if (previous != null) {
+                s = previous;
+            }
+        }
+        s.calls.increment();
+        if (sloNanos > 0) {
+            if (trace.getTotalNanos() <= sloNanos) {
+                return;
+            }
+            s.breaches.increment();
+        }
+        s.offer(trace, windowMillis);
+    }
+
+    /**
+     * Discards the samples of a service.
+     *
+     * @param serviceId
+     */
+    public void remove(String serviceId) {
+        samples.remove(serviceId);
+    }
+
+    /**
+     * @param serviceId
+     * @return the slow calls of the service, or {@code null} if no call has
+     * been recorded for it
+     */
+    public SlowCallStats getSlowCallStats(String serviceId) {
+        Samples s = samples.get(serviceId);
+        if (s == null) {
+            return null;
+        }
+        return s.getStats(serviceId);
+    }
+
+    /**
+     * @return the slow calls of all the services with recorded calls, sorted
+     * by service id
+     */
+    public SlowCallStats[] getSlowCallStats() {
+        List<SlowCallStats> ret = new ArrayList<SlowCallStats>();
+        for (Map.Entry<String, Samples> entry : samples.entrySet()) {
+            ret.add(entry.getValue().getStats(entry.getKey()));
+        }
+        SlowCallStats[] array = ret.toArray(new SlowCallStats[ret.size()]);
+        Arrays.sort(array, new Comparator<SlowCallStats>() {
+            @Override
+            public int compare(SlowCallStats o1, SlowCallStats o2) {
+                return o1.getId().compareTo(o2.getId());
+            }
+        });
+        return array;
+    }
+
+    private static SlowCall toSlowCall(CallTrace trace) {
+        SlowCall ret = new SlowCall();
+        ret.setTimestamp(trace.getTimestamp());
+        ret.setDuration(trace.getTotalNanos() / 1000);
+        ret.setInputSize(trace.getInputSize());
+        ret.setErrorCode(trace.getErrorCode());
+        ret.setNotModified(trace.isNotModified());
+        List<PhaseDuration> phases = new ArrayList<PhaseDuration>();
+        for (int i = 0; i < PHASES.length; i++) {
+            long nanos = trace.getPhaseNanos(PHASES[i]);
+            if (nanos > 0) {
+                PhaseDuration pd = new PhaseDuration();
+                pd.setPhase(PHASES[i].name());
+                pd.setDuration(nanos / 1000);
+                phases.add(pd);
+            }
+        }
+        ret.setPhases(phases.toArray(new PhaseDuration[phases.size()]));
+        return ret;
+    }
+
+    private static final class Samples {
+
+        private final AtomicReferenceArray<CallTrace> slots;
+        private final StripedCounter calls = new StripedCounter();
+        private final StripedCounter breaches = new StripedCounter();
+
+        Samples(int size) {
+            this.slots = new AtomicReferenceArray<CallTrace>(size);
+        }
+
+        void offer(CallTrace trace, long windowMillis) {
+            long total = trace.getTotalNanos();
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                int victim = -1;
+                CallTrace victimTrace = null;
+                long victimNanos = Long.MAX_VALUE;
+                for (int i = 0; i < slots.length(); i++) {
+                    CallTrace t = slots.get(i);
+                    // empty and expired slots are replaced first
+                    long nanos = t == null || trace.getTimestamp() - t.getTimestamp() > windowMillis ? -1 : t.getTotalNanos();
+                    if (nanos < victimNanos) {
+                        victim = i;
+                        victimTrace = t;
+                        victimNanos = nanos;
+                    }
+                }
+                if (total <= victimNanos) {
+                    return;
+                }
+                if (slots.compareAndSet(victim, victimTrace, trace)) {
+                    return;
+                }
+            }
+        }
+
+        SlowCallStats getStats(String id) {
+            List<CallTrace> traces = new ArrayList<CallTrace>();
+            for (int i = 0; i < slots.length(); i++) {
+                CallTrace t = slots.get(i);
+                if (t != null) {
+                    traces.add(t);
+                }
+            }
+            CallTrace[] array = traces.toArray(new CallTrace[traces.size()]);
+            Arrays.sort(array, new Comparator<CallTrace>() {
+                @Override
+                public int compare(CallTrace o1, CallTrace o2) {
+                    return o1.getTotalNanos() > o2.getTotalNanos() ? -1 : (o1.getTotalNanos() == o2.getTotalNanos() ? 0 : 1);
+                }
+            });
+            SlowCall[] slowCalls = new SlowCall[array.length];
+            for (int i = 0; i < array.length; i++) {
+                slowCalls[i] = toSlowCall(array[i]);
+            }
+            SlowCallStats ret = new SlowCallStats();
+            ret.setId(id);
+            ret.setCalls(calls.sum());
+            ret.setSloBreaches(breaches.sum());
+            ret.setSlowCalls(slowCalls);
+            return ret;
+        }
+    }
+}
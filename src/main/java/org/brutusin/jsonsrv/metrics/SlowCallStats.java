@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.metrics;
+
+/**
+ * Snapshot of the slow calls sampled for a service, slowest first, and its
+ * response-time objective compliance.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class SlowCallStats {
+
+    private String id;
+    private long calls;
+    private long sloBreaches;
+    private SlowCall[] slowCalls;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public void setCalls(long calls) {
+        this.calls = calls;
+    }
+
+    /**
+     * @return number of calls exceeding the response-time objective, 0 if no
+     * objective is set
+     */
+    public long getSloBreaches() {
+        return sloBreaches;
+    }
+
+    public void setSloBreaches(long sloBreaches) {
+        this.sloBreaches = sloBreaches;
+    }
+
+    public SlowCall[] getSlowCalls() {
+        return slowCalls;
+    }
+
+    public void setSlowCalls(SlowCall[] slowCalls) {
+        this.slowCalls = slowCalls;
+    }
+}
@@ -19,6 +19,7 @@ import java.io.IOException;
 import javax.servlet.ServletConfig;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.brutusin.jsonsrv.JsonPayload;
 import org.brutusin.jsonsrv.JsonService;
 import org.brutusin.jsonsrv.JsonServlet;
 
@@ -36,5 +37,23 @@ public abstract class Renderer {
         // to be overridden
     }
     
-    public abstract void service(ServletConfig servletConfig, HttpServletRequest req, HttpServletResponse resp, String json, JsonServlet.SchemaMode schemaMode, JsonService service) throws IOException;
+    public abstract void service(ServletConfig servletConfig, HttpServletRequest req, HttpServletResponse resp, String json, JsonServlet.SchemaMode schemaMode, JsonService<?, ?> service) throws IOException;
+
+    /**
+     * Stream-based variant, invoked by the framework servlet. Default
+     * implementation materializes the payload and delegates to the string-based
+     * method, so renderers willing to write the message incrementally have to
+     * override it.
+     *
+     * @param servletConfig
+     * @param req
+     * @param resp
+     * @param payload
+     * @param schemaMode
+     * @param service
+     * @throws IOException
+     */
+    public void service(ServletConfig servletConfig, HttpServletRequest req, HttpServletResponse resp, JsonPayload payload, JsonServlet.SchemaMode schemaMode, JsonService<?, ?> service) throws IOException {
+        service(servletConfig, req, resp, payload.toString(), schemaMode, service);
+    }
 }
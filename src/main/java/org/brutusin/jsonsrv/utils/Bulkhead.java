@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the concurrent executions of a service, isolating the rest of the
+ * services from its slowness. Executions beyond the limit wait in a bounded
+ * queue for a permit, and are rejected when the queue is full or the wait
+ * times out, so callers fail fast instead of piling up.
+ * <br/><br/><b>Adaptive limit</b>: When enabled, the limit varies between 1
+ * and the configured maximum following an AIMD (additive increase,
+ * multiplicative decrease) policy driven by the observed latency: it is
+ * decreased by 10% when an execution takes more than twice the minimum
+ * latency observed in the last {@value #WINDOW_SIZE} executions (or when a
+ * request is rejected), and increased by one when executions with the limit
+ * nearly in use are not slowed down. As in TCP congestion control, the limit
+ * is decreased at most once per sampling window: once decreased, the slow
+ * executions and rejections are ignored until as many executions as the
+ * previous limit have finished (roughly a round trip of the executions in
+ * flight when it was decreased), since they reflect the same overload.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class Bulkhead {
+
+    private static final int WINDOW_SIZE = 100;
+    private static final int LATENCY_TOLERANCE = 2;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int maxConcurrency;
+    private final int maxQueueSize;
+    private final long queueTimeoutNanos;
+    private final boolean adaptive;
+    private final AtomicLong rejections = new AtomicLong();
+
+    private int limit;
+    private int inFlight;
+    private int queued;
+    private long minLatency = Long.MAX_VALUE;
+    private long windowMinLatency = Long.MAX_VALUE;
+    private int windowCount;
+    private long releases;
+    /**
+     * Value of {@link #releases} from which the limit can be decreased again
+     */
+    private long decreaseWindowEnd;
+
+    /**
+     * @param maxConcurrency maximum number of concurrent executions
+     * @param maxQueueSize maximum number of executions waiting for a permit
+     * @param queueTimeout maximum time in milliseconds an execution waits for a
+     * permit
+     * @param adaptive whether to adapt the limit to the observed latency
+     */
+    public Bulkhead(int maxConcurrency, int maxQueueSize, long queueTimeout, boolean adaptive) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be positive");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueueSize = Math.max(0, maxQueueSize);
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeout);
+        this.adaptive = adaptive;
+        this.limit = maxConcurrency;
+    }
+
+    /**
+     * Acquires a permit for an execution, waiting in the queue if needed.
+     * Successful calls must be followed by a call to {@link #release(long)}.
+     *
+     * @return {@code false} if the execution is rejected
+     * @throws InterruptedException
+     */
+    public synchronized boolean acquire() throws InterruptedException {
+        if (inFlight < limit) {
+            inFlight++;
+            return true;
+        }
+        if (queued >= maxQueueSize) {
+            reject();
+            return false;
+        }
+        queued++;
+        try {
+            long remaining = queueTimeoutNanos;
+            long deadline = System.nanoTime() + remaining;
+            while (inFlight >= limit) {
+                if (remaining <= 0) {
+                    reject();
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+            inFlight++;
+            return true;
+        } finally {
+            queued--;
+        }
+    }
+
+    /**
+     * Releases the permit of a finished execution.
+     *
+     * @param latencyNanos duration of the execution, used by the adaptive
+     * limit
+     */
+    public synchronized void release(long latencyNanos) {
+        releases++;
+        if (adaptive) {
+            adapt(latencyNanos);
+        }
+        inFlight--;
+        notifyAll();
+    }
+
+    private void reject() {
+        rejections.incrementAndGet();
+        if (adaptive) {
+            decrease();
+        }
+    }
+
+    private void adapt(long latencyNanos) {
+        windowMinLatency = Math.min(windowMinLatency, latencyNanos);
+        if (++windowCount >= WINDOW_SIZE) {
+            // The baseline is renewed periodically, so it follows changes of the service latency
+            minLatency = windowMinLatency;
+            windowMinLatency = Long.MAX_VALUE;
+            windowCount = 0;
+        }
+        long baseline = Math.min(minLatency, windowMinLatency);
+        if (latencyNanos > baseline * LATENCY_TOLERANCE) {
+            decrease();
+        } else if (inFlight * 2 >= limit && limit < maxConcurrency) {
+            limit++;
+        }
+    }
+
+    private void decrease() {
+        if (releases < decreaseWindowEnd) {
+            return;
+        }
+        decreaseWindowEnd = releases + limit;
+        limit = Math.max(1, (int) (limit * BACKOFF_RATIO));
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public long getQueueTimeout() {
+        return TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos);
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * @return current concurrency limit
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return number of executions rejected
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.brutusin.commons.json.spi.JsonNode;
+
+/**
+ * 128-bit hash of the canonical form of a JSON value, so that values differing
+ * only in formatting get the same hash. The canonical form is:
+ * <ul>
+ * <li>Object properties sorted by name, properties with <code>null</code>
+ * value being ignored (same as absent)</li>
+ * <li>Numbers compared by their exact value (<code>1</code>, <code>1.0</code>
+ * and <code>1e0</code> are equal). Integers within 53 bits are hashed as
+ * such, and other numbers from the decimal value of their text, so large
+ * integers and high precision decimals are not collapsed</li>
+ * </ul>
+ * The tree is traversed directly, without building the canonical text. Values
+ * are mixed in 128-bit blocks as in MurmurHash3 (x64 variant).
+ * <br/><br/>Not intended for cryptographic use.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class CanonicalHash {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // type tags, avoiding collisions between values of different types
+    private static final long TAG_NULL = 1;
+    private static final long TAG_FALSE = 2;
+    private static final long TAG_TRUE = 3;
+    private static final long TAG_INTEGER = 4;
+    private static final long TAG_NUMBER = 5;
+    private static final long TAG_STRING = 6;
+    private static final long TAG_ARRAY = 7;
+    private static final long TAG_OBJECT = 8;
+    private static final long TAG_DECIMAL = 9;
+    private static final long TAG_BIG_DECIMAL = 10;
+
+    private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+    private long h1;
+    private long h2;
+    private long k1;
+    private boolean pending;
+    private long length;
+
+    private CanonicalHash() {
+    }
+
+    /**
+     * @param node value to hash (<code>null</code> is hashed as JSON null)
+     * @return the two 64-bit halves of the hash
+     */
+    public static long[] hash(JsonNode node) {
+        CanonicalHash hash = new CanonicalHash();
+        hash.value(node);
+        return hash.finish();
+    }
+
+    /**
+     * @param node
+     * @return the hash as a 32 characters hexadecimal string
+     */
+    public static String hashHex(JsonNode node) {
+        long[] hash = hash(node);
+        char[] chars = new char[32];
+        toHex(hash[0], chars, 0);
+        toHex(hash[1], chars, 16);
+        return new String(chars);
+    }
+
+    private void value(JsonNode node) {
+        if (node == null) {
+            add(TAG_NULL);
+            return;
+        }
+        switch (node.getNodeType()) {
+            case NULL:
+                add(TAG_NULL);
+                break;
+            case BOOLEAN:
+                add(node.asBoolean() ? TAG_TRUE : TAG_FALSE);
+                break;
+            case INTEGER:
+                Long l = node.asLong();
+                Double d = node.asDouble();
+                if (l != null && d != null && l >= -MAX_EXACT_INTEGER && l <= MAX_EXACT_INTEGER && d.doubleValue() == l) {
+                    add(TAG_INTEGER);
+                    add(l);
+                } else {
+                    number(node);
+                }
+                break;
+            case NUMBER:
+                number(node);
+                break;
+            case STRING:
+                string(node.asString());
+                break;
+            case ARRAY:
+                int size = node.getSize();
+                add(TAG_ARRAY);
+                add(size);
+                for (int i = 0; i < size; i++) {
+                    value(node.get(i));
+                }
+                break;
+            case OBJECT:
+                object(node);
+                break;
+            default:
+                string(node.toString());
+        }
+    }
+
+    private void number(JsonNode node) {
+        BigDecimal value;
+        try {
+            value = new BigDecimal(node.toString());
+        } catch (NumberFormatException ex) {
+            // number text not available
+            Double d = node.asDouble();
+            if (d.isNaN() || d.isInfinite()) {
+                add(TAG_NUMBER);
+                add(Double.doubleToLongBits(d));
+                return;
+            }
+            value = BigDecimal.valueOf(d);
+        }
+        if (value.signum() == 0) {
+            add(TAG_INTEGER);
+            add(0);
+            return;
+        }
+        value = value.stripTrailingZeros();
+        if (value.scale() <= 0 && value.precision() - value.scale() <= 18) {
+            // integral values hash as integers
+            add(TAG_INTEGER);
+            add(value.longValueExact());
+            return;
+        }
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < 64) {
+            add(TAG_DECIMAL);
+            add(value.scale());
+            add(unscaled.longValue());
+            return;
+        }
+        byte[] bytes = unscaled.toByteArray();
+        add(TAG_BIG_DECIMAL);
+        add(value.scale());
+        add(bytes.length);
+        for (int i = 0; i < bytes.length; i += 8) {
+            long k = 0;
+            for (int j = i; j < i + 8 && j < bytes.length; j++) {
+                k = k << 8 | (bytes[j] & 0xff);
+            }
+            add(k);
+        }
+    }
+
+
+    private void string(String s) {
+        int len = s.length();
+        add(TAG_STRING);
+        add(len);
+        int i = 0;
+        for (; i + 4 <= len; i += 4) {
+            add((long) s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48);
+        }
+        if (i < len) {
+            long k = 0;
+            for (int shift = 0; i < len; i++, shift += 16) {
+                k |= (long) s.charAt(i) << shift;
+            }
+            add(k);
+        }
+    }
+
+    private void object(JsonNode node) {
+        String[] names = new String[8];
+        int count = 0;
+        Iterator<String> properties = node.getProperties();
+        while (properties.hasNext()) {
+            String name = properties.next();
+            JsonNode child = node.get(name);
+            if (child == null || child.getNodeType() == JsonNode.Type.NULL) {
+                continue;
+            }
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+            }
+            names[count++] = name;
+        }
+        Arrays.sort(names, 0, count);
+        add(TAG_OBJECT);
+        add(count);
+        for (int i = 0; i < count; i++) {
+            string(names[i]);
+            value(node.get(names[i]));
+        }
+    }
+
+    private void add(long k) {
+        length += 8;
+        if (!pending) {
+            k1 = k;
+            pending = true;
+            return;
+        }
+        pending = false;
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= mixK2(k);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private long[] finish() {
+        if (pending) {
+            h1 ^= mixK1(k1);
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    private static long mixK1(long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        return k * C2;
+    }
+
+    private static long mixK2(long k) {
+        k *= C2;
+        k = Long.rotateLeft(k, 33);
+        return k * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static void toHex(long value, char[] chars, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import org.brutusin.commons.json.ParseException;
+
+/**
+ * Transcoder between JSON text and its
+ * <a href="http://tools.ietf.org/html/rfc7049">CBOR</a> representation,
+ * working directly on the encoded forms (no object tree is built).
+ * <br/><br/>
+ * Supported CBOR items are those having a JSON equivalent: integers,
+ * floating-point numbers, text strings, arrays, maps with text string keys,
+ * booleans and null. Tags are ignored, <code>undefined</code> is mapped to
+ * <code>null</code> and byte strings are not supported.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class Cbor {
+
+    public static final String MEDIA_TYPE = "application/cbor";
+    /**
+     * Suffix of the entity tags of CBOR representations (see
+     * {@link JsonSrvUtils#getVariantEtag(String, String)}).
+     */
+    public static final String ETAG_VARIANT = "cbor";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int BREAK = 0xff;
+
+    private Cbor() {
+    }
+
+    /**
+     * Writes the CBOR representation of a JSON text.
+     *
+     * @param json UTF-8 JSON text
+     * @param os
+     * @throws IOException
+     * @throws ParseException if the input is not valid JSON
+     */
+    public static void fromJson(byte[] json, OutputStream os) throws IOException, ParseException {
+        JsonReader reader = new JsonReader(json, os);
+        reader.skipWhitespace();
+        reader.value();
+        reader.skipWhitespace();
+        if (reader.pos != json.length) {
+            throw reader.error("Unexpected trailing content");
+        }
+    }
+
+    /**
+     * Returns the JSON text representation of a CBOR data item.
+     *
+     * @param cbor
+     * @return
+     * @throws ParseException if the input is not valid or supported CBOR
+     */
+    public static String toJson(byte[] cbor) throws ParseException {
+        CborReader reader = new CborReader(cbor);
+        StringBuilder sb = new StringBuilder(cbor.length * 2);
+        if (reader.item(sb, false)) {
+            throw reader.error("Unexpected break");
+        }
+        if (reader.pos != cbor.length) {
+            throw reader.error("Unexpected trailing content");
+        }
+        return sb.toString();
+    }
+
+    private static void writeHead(int majorType, long value, OutputStream os) throws IOException {
+        int mt = majorType << 5;
+        if (value < 24) {
+            os.write(mt | (int) value);
+        } else if (value < 0x100) {
+            os.write(mt | 24);
+            os.write((int) value);
+        } else if (value < 0x10000) {
+            os.write(mt | 25);
+            writeBytes(value, 2, os);
+        } else if (value < 0x100000000L) {
+            os.write(mt | 26);
+            writeBytes(value, 4, os);
+        } else {
+            os.write(mt | 27);
+            writeBytes(value, 8, os);
+        }
+    }
+
+    private static void writeBytes(long value, int n, OutputStream os) throws IOException {
+        for (int i = n - 1; i >= 0; i--) {
+            os.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+
+    /**
+     * Recursive descent JSON reader emitting CBOR items.
+     */
+    private static final class JsonReader {
+
+        private final byte[] json;
+        private final OutputStream os;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private int pos;
+
+        JsonReader(byte[] json, OutputStream os) {
+            this.json = json;
+            this.os = os;
+        }
+
+        void value() throws IOException, ParseException {
+            if (pos >= json.length) {
+                throw error("Unexpected end of input");
+            }
+            byte b = json[pos];
+            if (b == '{') {
+                pos++;
+                os.write(0xbf);
+                skipWhitespace();
+                if (peek() == '}') {
+                    pos++;
+                } else {
+                    while (true) {
+                        skipWhitespace();
+                        if (peek() != '"') {
+                            throw error("Expected property name");
+                        }
+                        string();
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                        value();
+                        skipWhitespace();
+                        if (peek() == ',') {
+                            pos++;
+                        } else {
+                            expect('}');
+                            break;
+                        }
+                    }
+                }
+                os.write(BREAK);
+            } else if (b == '[') {
+                pos++;
+                os.write(0x9f);
+                skipWhitespace();
+                if (peek() == ']') {
+                    pos++;
+                } else {
+                    while (true) {
+                        skipWhitespace();
+                        value();
+                        skipWhitespace();
+                        if (peek() == ',') {
+                            pos++;
+                        } else {
+                            expect(']');
+                            break;
+                        }
+                    }
+                }
+                os.write(BREAK);
+            } else if (b == '"') {
+                string();
+            } else if (b == 't') {
+                literal("true");
+                os.write(0xf5);
+            } else if (b == 'f') {
+                literal("false");
+                os.write(0xf4);
+            } else if (b == 'n') {
+                literal("null");
+                os.write(0xf6);
+            } else if (b == '-' || b >= '0' && b <= '9') {
+                number();
+            } else {
+                throw error("Unexpected character '" + (char) b + "'");
+            }
+        }
+
+        private void string() throws IOException, ParseException {
+            pos++;
+            int start = pos;
+            while (pos < json.length && json[pos] != '"' && json[pos] != '\\') {
+                pos++;
+            }
+            if (pos < json.length && json[pos] == '"') {
+                // No escape sequences: UTF-8 bytes are copied as they are
+                writeHead(3, pos - start, os);
+                os.write(json, start, pos - start);
+                pos++;
+                return;
+            }
+            buffer.reset();
+            buffer.write(json, start, pos - start);
+            while (true) {
+                if (pos >= json.length) {
+                    throw error("Unterminated string");
+                }
+                byte b = json[pos++];
+                if (b == '"') {
+                    break;
+                } else if (b != '\\') {
+                    buffer.write(b);
+                    continue;
+                }
+                if (pos >= json.length) {
+                    throw error("Unterminated string");
+                }
+                byte e = json[pos++];
+                switch (e) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        buffer.write(e);
+                        break;
+                    case 'b':
+                        buffer.write('\b');
+                        break;
+                    case 'f':
+                        buffer.write('\f');
+                        break;
+                    case 'n':
+                        buffer.write('\n');
+                        break;
+                    case 'r':
+                        buffer.write('\r');
+                        break;
+                    case 't':
+                        buffer.write('\t');
+                        break;
+                    case 'u':
+                        int c = hex4();
+                        if (Character.isHighSurrogate((char) c) && pos + 1 < json.length && json[pos] == '\\' && json[pos + 1] == 'u') {
+                            pos += 2;
+                            int low = hex4();
+                            writeUTF8(new String(new char[]{(char) c, (char) low}));
+                        } else {
+                            writeUTF8(String.valueOf((char) c));
+                        }
+                        break;
+                    default:
+                        throw error("Invalid escape sequence");
+                }
+            }
+            writeHead(3, buffer.size(), os);
+            buffer.writeTo(os);
+        }
+
+        private void writeUTF8(String s) throws UnsupportedEncodingException {
+            byte[] bytes = s.getBytes("UTF-8");
+            buffer.write(bytes, 0, bytes.length);
+        }
+
+        private int hex4() throws ParseException {
+            if (pos + 4 > json.length) {
+                throw error("Invalid unicode escape");
+            }
+            int ret = 0;
+            for (int i = 0; i < 4; i++) {
+                int d = Character.digit(json[pos++], 16);
+                if (d < 0) {
+                    throw error("Invalid unicode escape");
+                }
+                ret = ret << 4 | d;
+            }
+            return ret;
+        }
+
+        private void number() throws IOException, ParseException {
+            int start = pos;
+            boolean integer = true;
+            while (pos < json.length) {
+                byte b = json[pos];
+                if (b == '.' || b == 'e' || b == 'E') {
+                    integer = false;
+                } else if (!(b == '-' || b == '+' || b >= '0' && b <= '9')) {
+                    break;
+                }
+                pos++;
+            }
+            String str = new String(json, start, pos - start, "US-ASCII");
+            try {
+                if (integer) {
+                    try {
+                        long l = Long.parseLong(str);
+                        if (l >= 0) {
+                            writeHead(0, l, os);
+                        } else {
+                            writeHead(1, -1 - l, os);
+                        }
+                        return;
+                    } catch (NumberFormatException nfe) {
+                        // out of range, encoded as floating-point number
+                    }
+                }
+                os.write(0xfb);
+                writeBytes(Double.doubleToLongBits(Double.parseDouble(str)), 8, os);
+            } catch (NumberFormatException nfe) {
+                throw error("Invalid number " + str);
+            }
+        }
+
+        private void literal(String literal) throws ParseException {
+            for (int i = 0; i < literal.length(); i++) {
+                if (pos >= json.length || json[pos++] != literal.charAt(i)) {
+                    throw error("Invalid literal");
+                }
+            }
+        }
+
+        private int peek() throws ParseException {
+            if (pos >= json.length) {
+                throw error("Unexpected end of input");
+            }
+            return json[pos];
+        }
+
+        private void expect(char c) throws ParseException {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        void skipWhitespace() {
+            while (pos < json.length && (json[pos] == ' ' || json[pos] == '\n' || json[pos] == '\r' || json[pos] == '\t')) {
+                pos++;
+            }
+        }
+
+        ParseException error(String message) {
+            return new ParseException(message + " at position " + pos);
+        }
+    }
+
+    /**
+     * Recursive CBOR reader emitting JSON text.
+     */
+    private static final class CborReader {
+
+        private final byte[] cbor;
+        private int pos;
+
+        CborReader(byte[] cbor) {
+            this.cbor = cbor;
+        }
+
+        /**
+         * @return true if a break code was read instead of an item
+         */
+        boolean item(StringBuilder sb, boolean key) throws ParseException {
+            int initial = read();
+            int majorType = initial >> 5;
+            int info = initial & 0x1f;
+            if (initial == BREAK) {
+                return true;
+            }
+            if (key && majorType != 3) {
+                throw error("Only text strings are supported as map keys");
+            }
+            switch (majorType) {
+                case 0:
+                    appendUnsigned(argument(info), false, sb);
+                    break;
+                case 1:
+                    appendUnsigned(argument(info), true, sb);
+                    break;
+                case 2:
+                    throw error("Byte strings are not supported");
+                case 3:
+                    sb.append('"');
+                    if (info == 31) {
+                        while (true) {
+                            int chunk = read();
+                            if (chunk == BREAK) {
+                                break;
+                            }
+                            if (chunk >> 5 != 3 || (chunk & 0x1f) == 31) {
+                                throw error("Invalid text string chunk");
+                            }
+                            appendText(length(chunk & 0x1f), sb);
+                        }
+                    } else {
+                        appendText(length(info), sb);
+                    }
+                    sb.append('"');
+                    break;
+                case 4:
+                    sb.append('[');
+                    if (info == 31) {
+                        for (int i = 0;; i++) {
+                            int mark = sb.length();
+                            if (i > 0) {
+                                sb.append(',');
+                            }
+                            if (item(sb, false)) {
+                                sb.setLength(mark);
+                                break;
+                            }
+                        }
+                    } else {
+                        int size = length(info);
+                        for (int i = 0; i < size; i++) {
+                            if (i > 0) {
+                                sb.append(',');
+                            }
+                            requireItem(sb, false);
+                        }
+                    }
+                    sb.append(']');
+                    break;
+                case 5:
+                    sb.append('{');
+                    if (info == 31) {
+                        for (int i = 0;; i++) {
+                            int mark = sb.length();
+                            if (i > 0) {
+                                sb.append(',');
+                            }
+                            if (item(sb, true)) {
+                                sb.setLength(mark);
+                                break;
+                            }
+                            sb.append(':');
+                            requireItem(sb, false);
+                        }
+                    } else {
+                        int size = length(info);
+                        for (int i = 0; i < size; i++) {
+                            if (i > 0) {
+                                sb.append(',');
+                            }
+                            requireItem(sb, true);
+                            sb.append(':');
+                            requireItem(sb, false);
+                        }
+                    }
+                    sb.append('}');
+                    break;
+                case 6:
+                    argument(info);
+                    requireItem(sb, false);
+                    break;
+                default:
+                    simple(info, sb);
+            }
+            return false;
+        }
+
+        private void requireItem(StringBuilder sb, boolean key) throws ParseException {
+            if (item(sb, key)) {
+                throw error("Unexpected break");
+            }
+        }
+
+        private void simple(int info, StringBuilder sb) throws ParseException {
+            double d;
+            switch (info) {
+                case 20:
+                    sb.append("false");
+                    return;
+                case 21:
+                    sb.append("true");
+                    return;
+                case 22:
+                case 23:
+                    sb.append("null");
+                    return;
+                case 25:
+                    d = halfToDouble((int) readBytes(2));
+                    break;
+                case 26:
+                    d = Float.intBitsToFloat((int) readBytes(4));
+                    break;
+                case 27:
+                    d = Double.longBitsToDouble(readBytes(8));
+                    break;
+                default:
+                    throw error("Unsupported simple value " + info);
+            }
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                sb.append("null");
+            } else if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                sb.append((long) d);
+            } else {
+                sb.append(d);
+            }
+        }
+
+        private void appendUnsigned(long value, boolean negative, StringBuilder sb) {
+            if (value >= 0) {
+                sb.append(negative ? -1 - value : value);
+            } else {
+                // unsigned 64-bit value
+                BigInteger big = BigInteger.valueOf(value >>> 1).shiftLeft(1).add(BigInteger.valueOf(value & 1));
+                sb.append(negative ? big.negate().subtract(BigInteger.ONE) : big);
+            }
+        }
+
+        private void appendText(int length, StringBuilder sb) throws ParseException {
+            if (pos + length > cbor.length) {
+                throw error("Unexpected end of input");
+            }
+            String str;
+            try {
+                str = new String(cbor, pos, length, "UTF-8");
+            } catch (UnsupportedEncodingException ex) {
+                throw new AssertionError();
+            }
+            pos += length;
+            for (int i = 0; i < str.length(); i++) {
+                char c = str.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        sb.append("\\r");
+                        break;
+                    case '\t':
+                        sb.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+        }
+
+        private int length(int info) throws ParseException {
+            long length = argument(info);
+            if (length < 0 || length > cbor.length - pos) {
+                throw error("Invalid length " + length);
+            }
+            return (int) length;
+        }
+
+        private long argument(int info) throws ParseException {
+            if (info < 24) {
+                return info;
+            }
+            switch (info) {
+                case 24:
+                    return readBytes(1);
+                case 25:
+                    return readBytes(2);
+                case 26:
+                    return readBytes(4);
+                case 27:
+                    return readBytes(8);
+                default:
+                    throw error("Invalid additional information " + info);
+            }
+        }
+
+        private long readBytes(int n) throws ParseException {
+            long ret = 0;
+            for (int i = 0; i < n; i++) {
+                ret = ret << 8 | read();
+            }
+            return ret;
+        }
+
+        private int read() throws ParseException {
+            if (pos >= cbor.length) {
+                throw error("Unexpected end of input");
+            }
+            return cbor[pos++] & 0xff;
+        }
+
+        private static double halfToDouble(int half) {
+            int exp = (half >> 10) & 0x1f;
+            int mant = half & 0x3ff;
+            double val;
+            if (exp == 0) {
+                val = mant * Math.pow(2, -24);
+            } else if (exp != 31) {
+                val = (mant + 1024) * Math.pow(2, exp - 25);
+            } else {
+                val = mant == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+            }
+            return (half & 0x8000) != 0 ? -val : val;
+        }
+
+        ParseException error(String message) {
+            return new ParseException(message + " at position " + pos);
+        }
+    }
+}
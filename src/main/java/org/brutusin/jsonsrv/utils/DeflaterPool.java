@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses byte arrays and streams in the <code>gzip</code> and
+ * <code>deflate</code> HTTP content-codings, reusing a bounded number of
+ * {@link Deflater} instances (and their native memory) among invocations.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class DeflaterPool {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final int level;
+    private final BlockingQueue<Deflater> rawDeflaters;
+    private final BlockingQueue<Deflater> zlibDeflaters;
+
+    public DeflaterPool(int capacity, int level) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Pool capacity must be positive");
+        }
+        this.level = level;
+        this.rawDeflaters = new ArrayBlockingQueue<Deflater>(capacity);
+        this.zlibDeflaters = new ArrayBlockingQueue<Deflater>(capacity);
+    }
+
+    /**
+     * @param contentCoding
+     * @return whether the content-coding is supported by
+     * {@link #encode(byte[], String)}
+     */
+    public static boolean isSupported(String contentCoding) {
+        return GZIP.equals(contentCoding) || DEFLATE.equals(contentCoding);
+    }
+
+    public byte[] encode(byte[] data, String contentCoding) {
+        if (GZIP.equals(contentCoding)) {
+            return gzip(data);
+        } else if (DEFLATE.equals(contentCoding)) {
+            return deflate(data);
+        } else {
+            throw new IllegalArgumentException("Unsupported content-coding: " + contentCoding);
+        }
+    }
+
+    /**
+     * @param data
+     * @return data in gzip format (rfc1952)
+     */
+    public byte[] gzip(byte[] data) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length / 4 + GZIP_HEADER.length + 8);
+        baos.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+        compress(rawDeflaters, true, data, baos);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeIntLE((int) crc.getValue(), baos);
+        writeIntLE(data.length, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * @param data
+     * @return data in zlib format (rfc1950), as expected by the
+     * <code>deflate</code> HTTP content-coding
+     */
+    public byte[] deflate(byte[] data) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length / 4 + 6);
+        compress(zlibDeflaters, false, data, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Returns a stream compressing the data written to it in the
+     * content-coding, with a pooled deflater. The deflater is returned to the
+     * pool when the stream is closed or, if the data can not be completely
+     * written, aborted (see {@link EncodingStream#abort()}), so callers must
+     * do one of them in a finally block.
+     *
+     * @param os target stream, not closed by the returned stream
+     * @param contentCoding
+     * @return
+     * @throws IOException
+     */
+    public EncodingStream openStream(OutputStream os, String contentCoding) throws IOException {
+        if (GZIP.equals(contentCoding)) {
+            os.write(GZIP_HEADER);
+            return new EncodingStream(os, rawDeflaters, borrow(rawDeflaters, true), new CRC32());
+        } else if (DEFLATE.equals(contentCoding)) {
+            return new EncodingStream(os, zlibDeflaters, borrow(zlibDeflaters, false), null);
+        } else {
+            throw new IllegalArgumentException("Unsupported content-coding: " + contentCoding);
+        }
+    }
+
+    private Deflater borrow(BlockingQueue<Deflater> pool, boolean nowrap) {
+        Deflater deflater = pool.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, nowrap);
+        }
+        return deflater;
+    }
+
+    private static void release(BlockingQueue<Deflater> pool, Deflater deflater) {
+        deflater.reset();
+        if (!pool.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private void compress(BlockingQueue<Deflater> pool, boolean nowrap, byte[] data, ByteArrayOutputStream os) {
+        Deflater deflater = borrow(pool, nowrap);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[Math.min(8 * 1024, data.length + 64)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                os.write(buffer, 0, n);
+            }
+        } finally {
+            release(pool, deflater);
+        }
+    }
+
+    private static void writeIntLE(int i, OutputStream os) throws IOException {
+        os.write(i & 0xff);
+        os.write((i >> 8) & 0xff);
+        os.write((i >> 16) & 0xff);
+        os.write((i >> 24) & 0xff);
+    }
+
+    private static void writeIntLE(int i, ByteArrayOutputStream os) {
+        os.write(i & 0xff);
+        os.write((i >> 8) & 0xff);
+        os.write((i >> 16) & 0xff);
+        os.write((i >> 24) & 0xff);
+    }
+
+    /**
+     * Compressing stream holding a pooled deflater until closed.
+     */
+    public static final class EncodingStream extends OutputStream {
+
+        private final OutputStream os;
+        private final BlockingQueue<Deflater> pool;
+        private final CRC32 crc;
+        private final byte[] buffer = new byte[8 * 1024];
+        private Deflater deflater;
+        private int length;
+
+        private EncodingStream(OutputStream os, BlockingQueue<Deflater> pool, Deflater deflater, CRC32 crc) {
+            this.os = os;
+            this.pool = pool;
+            this.deflater = deflater;
+            this.crc = crc;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (deflater == null) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                os.write(buffer, 0, deflater.deflate(buffer));
+            }
+            if (crc != null) {
+                crc.update(b, off, len);
+                length += len;
+            }
+        }
+
+        /**
+         * Completes the compressed data and returns the deflater to the pool
+         * (also if writing the remaining data fails).
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            if (deflater == null) {
+                return;
+            }
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    os.write(buffer, 0, deflater.deflate(buffer));
+                }
+                if (crc != null) {
+                    writeIntLE((int) crc.getValue(), os);
+                    writeIntLE(length, os);
+                }
+            } finally {
+                abort();
+            }
+        }
+
+        /**
+         * Returns the deflater to the pool without completing the compressed
+         * data, after a failure writing the data.
+         */
+        public void abort() {
+            if (deflater != null) {
+                release(pool, deflater);
+                deflater = null;
+            }
+        }
+    }
+}
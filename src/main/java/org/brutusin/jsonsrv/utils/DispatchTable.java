@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable string-keyed lookup table, based on open addressing with linear
+ * probing over arrays sized to keep the load factor under 0.5. Being
+ * immutable, it can be read concurrently without synchronization, and lookups
+ * do not allocate (string hash codes are cached by the keys).
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ * @param <V> Value type
+ */
+public final class DispatchTable<V> {
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final Map<String, V> map;
+
+    public DispatchTable(Map<String, V> map) {
+        int capacity = 2;
+        while (capacity < map.size() * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        for (Map.Entry<String, V> entry : map.entrySet()) {
+            int i = spread(entry.getKey().hashCode()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+        }
+        this.map = Collections.unmodifiableMap(new LinkedHashMap<String, V>(map));
+    }
+
+    /**
+     * @param key
+     * @return the value associated to the key, or {@code null} if not present
+     */
+    @SuppressWarnings("unchecked") // values[] only holds the V instances copied from the source map
+    public V get(String key) {
+        if (key == null) {
+            return null;
+        }
+        int i = spread(key.hashCode()) & mask;
+        String k;
+        while ((k = keys[i]) != null) {
+            if (k == key || k.equals(key)) {
+                return (V) values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return read-only view of the contents, in insertion order
+     */
+    public Map<String, V> asMap() {
+        return map;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -16,6 +16,17 @@
 package org.brutusin.jsonsrv.utils;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.brutusin.commons.utils.Miscellaneous;
 import org.brutusin.jsonsrv.impl.VersionAction;
 
@@ -25,6 +36,20 @@ import org.brutusin.jsonsrv.impl.VersionAction;
  */
 public class JsonSrvUtils {
 
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String[] ETAG_VARIANTS = {DeflaterPool.GZIP, DeflaterPool.DEFLATE, Cbor.ETAG_VARIANT};
+
+    /**
+     * Per-thread encoder and output buffer, reused across requests.
+     */
+    private static final ThreadLocal<Encoder> ENCODERS = new ThreadLocal<Encoder>() {
+        @Override
+        protected Encoder initialValue() {
+            return new Encoder();
+        }
+    };
+
     private JsonSrvUtils() {
     }
 
@@ -35,4 +60,223 @@ public class JsonSrvUtils {
             throw new RuntimeException(ex);
         }
     }
+
+    /**
+     * @param bytes
+     * @return hexadecimal MD5 digest of the bytes
+     */
+    public static String md5Hex(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (int i = 0; i < digest.length; i++) {
+                sb.append(HEX_DIGITS[(digest[i] >> 4) & 0xf]).append(HEX_DIGITS[digest[i] & 0xf]);
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * Returns whether the given content-coding is accepted according to the
+     * value of an <code>Accept-Encoding</code> request header.
+     *
+     * @param acceptEncoding header value, can be null
+     * @param contentCoding for example "gzip"
+     * @return
+     */
+    public static boolean acceptsEncoding(String acceptEncoding, String contentCoding) {
+        return isAccepted(acceptEncoding, contentCoding, "*");
+    }
+
+    /**
+     * Returns whether the given media type is explicitly accepted (wildcard
+     * ranges are not considered) according to the value of an
+     * <code>Accept</code> request header.
+     *
+     * @param accept header value, can be null
+     * @param mediaType for example "application/cbor"
+     * @return
+     */
+    public static boolean acceptsMediaType(String accept, String mediaType) {
+        return isAccepted(accept, mediaType, null);
+    }
+
+    private static boolean isAccepted(String header, String value, String wildcardValue) {
+        if (header == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        String[] items = header.split(",");
+        for (int i = 0; i < items.length; i++) {
+            String[] tokens = items[i].split(";");
+            String item = tokens[0].trim();
+            boolean accepted = true;
+            for (int j = 1; j < tokens.length; j++) {
+                String param = tokens[j].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2).trim()) > 0;
+                    } catch (NumberFormatException ex) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (item.equalsIgnoreCase(value)) {
+                return accepted;
+            } else if (item.equals(wildcardValue)) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * Returns whether an <code>If-None-Match</code> request header matches
+     * the given strong entity tag.
+     *
+     * @param ifNoneMatch header value, can be null
+     * @param etag quoted entity tag
+     * @return
+     */
+    public static boolean matchesEtag(String ifNoneMatch, String etag) {
+        return getMatchingEtag(ifNoneMatch, etag) != null;
+    }
+
+    /**
+     * Returns the entity tag of the <code>If-None-Match</code> request header
+     * matching the given strong entity tag or any of its representation
+     * variants (see {@link #getVariantEtag(String, String)}).
+     *
+     * @param ifNoneMatch header value, can be null
+     * @param etag quoted entity tag
+     * @return the matching tag (without weakness indicator), or {@code null}
+     * if none matches
+     */
+    public static String getMatchingEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        String[] tags = ifNoneMatch.split(",");
+        for (int i = 0; i < tags.length; i++) {
+            String tag = tags[i].trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return tag;
+            }
+            for (int j = 0; j < ETAG_VARIANTS.length; j++) {
+                if (tag.equals(getVariantEtag(etag, ETAG_VARIANTS[j]))) {
+                    return tag;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the strong entity tag of a representation variant (a
+     * content-coding or a media type other than JSON) of the payload
+     * identified by the given entity tag, so that different byte sequences
+     * never share a strong validator. For example <code>"abc"</code> becomes
+     * <code>"abc-gzip"</code>.
+     *
+     * @param etag quoted entity tag
+     * @param variant one of "gzip", "deflate" or "cbor"
+     * @return
+     */
+    public static String getVariantEtag(String etag, String variant) {
+        return etag.substring(0, etag.length() - 1) + "-" + variant + "\"";
+    }
+
+    /**
+     * Returns whether an <code>If-None-Match</code> request header equals the
+     * weak entity tag built from the given opaque value
+     * (<code>W/"value"</code>), without allocating.
+     *
+     * @param ifNoneMatch header value, can be null
+     * @param etag unquoted value
+     * @return
+     */
+    public static boolean matchesWeakEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        if (ifNoneMatch.startsWith("W/\"")) {
+            return ifNoneMatch.length() == etag.length() + 4 && ifNoneMatch.charAt(ifNoneMatch.length() - 1) == '"' && ifNoneMatch.regionMatches(3, etag, 0, etag.length());
+        }
+        return ifNoneMatch.equals(etag);
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task, if
+     * supported by the running JVM (Java 21+).
+     *
+     * @return the executor, or {@code null} if virtual threads are not
+     * supported
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Encodes the string as UTF-8 straight into the stream, in chunks of a
+     * pooled buffer, instead of allocating its whole byte representation.
+     *
+     * @param str
+     * @param os
+     * @throws IOException
+     */
+    public static void writeUTF8(String str, OutputStream os) throws IOException {
+        if (str == null || str.isEmpty()) {
+            return;
+        }
+        ENCODERS.get().write(str, os);
+    }
+
+    private static final class Encoder {
+
+        private final CharsetEncoder encoder = Miscellaneous.toCharset("UTF-8").newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        void write(String str, OutputStream os) throws IOException {
+            CharBuffer in = CharBuffer.wrap(str);
+            encoder.reset();
+            buffer.clear();
+            try {
+                while (true) {
+                    CoderResult result = encoder.encode(in, buffer, true);
+                    if (result.isUnderflow()) {
+                        break;
+                    } else if (result.isOverflow()) {
+                        drain(os);
+                    } else {
+                        result.throwException();
+                    }
+                }
+                while (encoder.flush(buffer).isOverflow()) {
+                    drain(os);
+                }
+                drain(os);
+            } finally {
+                buffer.clear();
+            }
+        }
+
+        private void drain(OutputStream os) throws IOException {
+            os.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
 }
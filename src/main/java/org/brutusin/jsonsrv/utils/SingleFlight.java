@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses concurrent invocations sharing the same key into a single one. The
+ * first caller for a key runs the computation in its own thread, and callers
+ * arriving while it is in progress wait for it and receive the same outcome
+ * (result or exception).
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ * @param <V> Result type
+ */
+public final class SingleFlight<V> {
+
+    private final ConcurrentMap<String, FutureTask<V>> inFlight = new ConcurrentHashMap<String, FutureTask<V>>();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    public V execute(String key, Callable<V> callable) throws Exception {
+        FutureTask<V> task = new FutureTask<V>(callable);
+        FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        } else {
+            collapsed.incrementAndGet();
+            task = existing;
+        }
+        return get(task);
+    }
+
+    /**
+     * @return number of invocations served by the computation of another caller
+     */
+    public long getCollapsed() {
+        return collapsed.get();
+    }
+
+    private static <V> V get(FutureTask<V> task) throws Exception {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw ex;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.validation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.brutusin.commons.json.ParseException;
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
+
+/**
+ * Specialized validator compiled from a JSON schema at startup. Keywords are
+ * resolved once into a tree of checks (types as bit masks, required and
+ * declared properties as arrays, patterns precompiled, ...) so validating an
+ * input only walks the input tree.
+ * <br/><br/>
+ * A compiled schema is a <b>fast path</b>: {@link #isValid(JsonNode)}
+ * returning <code>true</code> guarantees the input is valid, whereas
+ * <code>false</code> means it could not be proven valid. In that case the
+ * generic {@link org.brutusin.commons.json.spi.JsonSchema} has to be used in
+ * order to get the authoritative outcome and its error messages.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public final class CompiledSchema {
+
+    private static final int STRING = 1;
+    private static final int INTEGER = 1 << 1;
+    private static final int NUMBER = 1 << 2;
+    private static final int BOOLEAN = 1 << 3;
+    private static final int OBJECT = 1 << 4;
+    private static final int ARRAY = 1 << 5;
+    private static final int NULL = 1 << 6;
+    private static final int ANY = 0;
+
+    private static final Set<String> IGNORED_KEYWORDS = new HashSet<String>();
+    private static final Set<String> SUPPORTED_KEYWORDS = new HashSet<String>();
+
+    static {
+        String[] ignored = {"$schema", "id", "title", "description", "default"};
+        for (int i = 0; i < ignored.length; i++) {
+            IGNORED_KEYWORDS.add(ignored[i]);
+        }
+        String[] supported = {"type", "properties", "required", "additionalProperties", "items", "enum", "minimum", "maximum", "exclusiveMinimum", "exclusiveMaximum", "minLength", "maxLength", "pattern", "minItems", "maxItems"};
+        for (int i = 0; i < supported.length; i++) {
+            SUPPORTED_KEYWORDS.add(supported[i]);
+        }
+    }
+
+    private int types = ANY;
+    private String[] requiredProperties;
+    private String[] propertyNames;
+    private CompiledSchema[] propertySchemas;
+    private Set<String> declaredProperties;
+    private boolean additionalPropertiesDisallowed;
+    private CompiledSchema items;
+    private Set<String> enumValues;
+    private Double minimum;
+    private boolean exclusiveMinimum;
+    private Double maximum;
+    private boolean exclusiveMaximum;
+    private int minLength = -1;
+    private int maxLength = -1;
+    private Pattern pattern;
+    private int minItems = -1;
+    private int maxItems = -1;
+    /**
+     * Declared as required by the parent (draft 3 notation)
+     */
+    private boolean required;
+
+    private CompiledSchema() {
+    }
+
+    /**
+     * Compiles the schema.
+     *
+     * @param schema
+     * @return the compiled schema, or {@code null} if the schema uses features
+     * not supported by the compiler
+     * @throws ParseException
+     */
+    public static CompiledSchema compile(String schema) throws ParseException {
+        return compile(JsonCodec.getInstance().parse(schema));
+    }
+
+    /**
+     * Compiles the schema.
+     *
+     * @param schema
+     * @return the compiled schema, or {@code null} if the schema uses features
+     * not supported by the compiler
+     */
+    public static CompiledSchema compile(JsonNode schema) {
+        if (schema == null || schema.getNodeType() != JsonNode.Type.OBJECT) {
+            return null;
+        }
+        CompiledSchema ret = new CompiledSchema();
+        Iterator<String> keywords = schema.getProperties();
+        while (keywords.hasNext()) {
+            String keyword = keywords.next();
+            if (IGNORED_KEYWORDS.contains(keyword)) {
+                continue;
+            }
+            if (!SUPPORTED_KEYWORDS.contains(keyword) || !ret.compileKeyword(keyword, schema.get(keyword))) {
+                return null;
+            }
+        }
+        return ret;
+    }
+
+    private boolean compileKeyword(String keyword, JsonNode value) {
+        JsonNode.Type type = value.getNodeType();
+        if (keyword.equals("type")) {
+            if (type == JsonNode.Type.STRING) {
+                types = getTypeMask(value.asString());
+                return types >= 0;
+            } else if (type == JsonNode.Type.ARRAY) {
+                for (int i = 0; i < value.getSize(); i++) {
+                    JsonNode t = value.get(i);
+                    int mask = t.getNodeType() == JsonNode.Type.STRING ? getTypeMask(t.asString()) : -1;
+                    if (mask <= 0) {
+                        return false;
+                    }
+                    types |= mask;
+                }
+                return true;
+            }
+            return false;
+        } else if (keyword.equals("properties")) {
+            if (type != JsonNode.Type.OBJECT) {
+                return false;
+            }
+            List<String> names = new ArrayList<String>();
+            List<CompiledSchema> schemas = new ArrayList<CompiledSchema>();
+            List<String> req = new ArrayList<String>();
+            Iterator<String> it = value.getProperties();
+            while (it.hasNext()) {
+                String name = it.next();
+                CompiledSchema propertySchema = compile(value.get(name));
+                if (propertySchema == null) {
+                    return false;
+                }
+                names.add(name);
+                schemas.add(propertySchema);
+                if (propertySchema.required) {
+                    req.add(name);
+                }
+            }
+            propertyNames = names.toArray(new String[names.size()]);
+            propertySchemas = schemas.toArray(new CompiledSchema[schemas.size()]);
+            declaredProperties = new HashSet<String>(names);
+            requiredProperties = concat(requiredProperties, req);
+            return true;
+        } else if (keyword.equals("required")) {
+            if (type == JsonNode.Type.BOOLEAN) {
+                required = value.asBoolean();
+                return true;
+            } else if (type == JsonNode.Type.ARRAY) {
+                List<String> req = new ArrayList<String>();
+                for (int i = 0; i < value.getSize(); i++) {
+                    if (value.get(i).getNodeType() != JsonNode.Type.STRING) {
+                        return false;
+                    }
+                    req.add(value.get(i).asString());
+                }
+                requiredProperties = concat(requiredProperties, req);
+                return true;
+            }
+            return false;
+        } else if (keyword.equals("additionalProperties")) {
+            if (type != JsonNode.Type.BOOLEAN) {
+                return false;
+            }
+            additionalPropertiesDisallowed = !value.asBoolean();
+            return true;
+        } else if (keyword.equals("items")) {
+            items = compile(value);
+            return items != null;
+        } else if (keyword.equals("enum")) {
+            if (type != JsonNode.Type.ARRAY) {
+                return false;
+            }
+            enumValues = new HashSet<String>();
+            for (int i = 0; i < value.getSize(); i++) {
+                enumValues.add(value.get(i).toString());
+            }
+            return true;
+        } else if (keyword.equals("minimum") || keyword.equals("maximum")) {
+            if (type != JsonNode.Type.INTEGER && type != JsonNode.Type.NUMBER) {
+                return false;
+            }
+            if (keyword.equals("minimum")) {
+                minimum = value.asDouble();
+            } else {
+                maximum = value.asDouble();
+            }
+            return true;
+        } else if (keyword.equals("exclusiveMinimum") || keyword.equals("exclusiveMaximum")) {
+            if (type != JsonNode.Type.BOOLEAN) {
+                return false;
+            }
+            if (keyword.equals("exclusiveMinimum")) {
+                exclusiveMinimum = value.asBoolean();
+            } else {
+                exclusiveMaximum = value.asBoolean();
+            }
+            return true;
+        } else if (keyword.equals("pattern")) {
+            if (type != JsonNode.Type.STRING) {
+                return false;
+            }
+            try {
+                pattern = Pattern.compile(value.asString());
+            } catch (RuntimeException ex) {
+                return false;
+            }
+            return true;
+        } else {
+            // minLength, maxLength, minItems, maxItems
+            if (type != JsonNode.Type.INTEGER || value.asLong() < 0 || value.asLong() > Integer.MAX_VALUE) {
+                return false;
+            }
+            int i = value.asInteger();
+            if (keyword.equals("minLength")) {
+                minLength = i;
+            } else if (keyword.equals("maxLength")) {
+                maxLength = i;
+            } else if (keyword.equals("minItems")) {
+                minItems = i;
+            } else {
+                maxItems = i;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns whether the input is proven valid against the schema.
+     *
+     * @param node
+     * @return <code>true</code> if valid, <code>false</code> if it could not
+     * be proven valid
+     */
+    public boolean isValid(JsonNode node) {
+        JsonNode.Type type = node.getNodeType();
+        int mask = getTypeMask(type);
+        if (types != ANY && (types & mask) == 0) {
+            if (!(mask == INTEGER && (types & NUMBER) != 0)) {
+                return false;
+            }
+        }
+        if (enumValues != null && !enumValues.contains(node.toString())) {
+            return false;
+        }
+        switch (mask) {
+            case OBJECT:
+                return isValidObject(node);
+            case ARRAY:
+                return isValidArray(node);
+            case STRING:
+                return isValidString(node.asString());
+            case INTEGER:
+            case NUMBER:
+                return isValidNumber(node.asDouble());
+            default:
+                return true;
+        }
+    }
+
+    private boolean isValidObject(JsonNode node) {
+        if (requiredProperties != null) {
+            for (int i = 0; i < requiredProperties.length; i++) {
+                JsonNode value = node.get(requiredProperties[i]);
+                if (value == null) {
+                    return false;
+                }
+            }
+        }
+        if (propertyNames != null) {
+            for (int i = 0; i < propertyNames.length; i++) {
+                JsonNode value = node.get(propertyNames[i]);
+                if (value != null && !propertySchemas[i].isValid(value)) {
+                    return false;
+                }
+            }
+        }
+        if (additionalPropertiesDisallowed) {
+            Iterator<String> it = node.getProperties();
+            while (it.hasNext()) {
+                if (declaredProperties == null || !declaredProperties.contains(it.next())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isValidArray(JsonNode node) {
+        int size = node.getSize();
+        if (minItems >= 0 && size < minItems || maxItems >= 0 && size > maxItems) {
+            return false;
+        }
+        if (items != null) {
+            for (int i = 0; i < size; i++) {
+                if (!items.isValid(node.get(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isValidString(String str) {
+        if (minLength >= 0 || maxLength >= 0) {
+            int length = str.codePointCount(0, str.length());
+            if (minLength >= 0 && length < minLength || maxLength >= 0 && length > maxLength) {
+                return false;
+            }
+        }
+        return pattern == null || pattern.matcher(str).find();
+    }
+
+    private boolean isValidNumber(Double d) {
+        if (d == null) {
+            return false;
+        }
+        if (minimum != null && (exclusiveMinimum ? d <= minimum : d < minimum)) {
+            return false;
+        }
+        return maximum == null || !(exclusiveMaximum ? d >= maximum : d > maximum);
+    }
+
+    private static String[] concat(String[] array, List<String> list) {
+        if (array != null) {
+            for (int i = 0; i < array.length; i++) {
+                list.add(array[i]);
+            }
+        }
+        return list.isEmpty() ? array : list.toArray(new String[list.size()]);
+    }
+
+    private static int getTypeMask(String type) {
+        if (type.equals("string")) {
+            return STRING;
+        } else if (type.equals("integer")) {
+            return INTEGER;
+        } else if (type.equals("number")) {
+            return NUMBER;
+        } else if (type.equals("boolean")) {
+            return BOOLEAN;
+        } else if (type.equals("object")) {
+            return OBJECT;
+        } else if (type.equals("array")) {
+            return ARRAY;
+        } else if (type.equals("null")) {
+            return NULL;
+        } else if (type.equals("any")) {
+            return ANY;
+        } else {
+            return -1;
+        }
+    }
+
+    private static int getTypeMask(JsonNode.Type type) {
+        switch (type) {
+            case STRING:
+                return STRING;
+            case INTEGER:
+                return INTEGER;
+            case NUMBER:
+                return NUMBER;
+            case BOOLEAN:
+                return BOOLEAN;
+            case OBJECT:
+                return OBJECT;
+            case ARRAY:
+                return ARRAY;
+            case NULL:
+                return NULL;
+            default:
+                return ANY;
+        }
+    }
+}
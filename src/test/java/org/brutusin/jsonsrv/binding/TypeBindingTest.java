@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.binding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
+import org.brutusin.jsonsrv.utils.CanonicalHash;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that bindings produce the same output as the SPI codec.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class TypeBindingTest {
+
+    private static void assertWritesAsCodec(Class type, Object value) throws Exception {
+        TypeBinding binding = TypeBinding.create(type);
+        assertNotNull(type.getName(), binding);
+        assertEquals(JsonCodec.getInstance().transform(value), binding.write(value));
+    }
+
+    private static void assertReadsAsCodec(Class type, String json) throws Exception {
+        JsonCodec codec = JsonCodec.getInstance();
+        TypeBinding binding = TypeBinding.create(type);
+        assertNotNull(type.getName(), binding);
+        Object bound = binding.read(codec.parse(json));
+        assertEquals(json, codec.transform(codec.parse(json, type)), codec.transform(bound));
+    }
+
+    private static Bean createBean() {
+        Bean bean = new Bean();
+        bean.setName("a \"quoted\"\nname\u0001");
+        bean.setCount(3);
+        bean.setRatio(0.25);
+        bean.setEnabled(true);
+        bean.setTotal(Long.MAX_VALUE);
+        bean.setTags(new String[]{"x", "y"});
+        Bean child = new Bean();
+        child.setName("child");
+        bean.setChildren(new ArrayList<Bean>(Arrays.asList(child)));
+        return bean;
+    }
+
+    @Test
+    public void testWriteBean() throws Exception {
+        assertWritesAsCodec(Bean.class, createBean());
+        assertWritesAsCodec(Bean.class, new Bean());
+    }
+
+    @Test
+    public void testWriteArrays() throws Exception {
+        assertWritesAsCodec(int[].class, new int[]{1, -2, 3});
+        assertWritesAsCodec(double[].class, new double[]{0.5, -1e10});
+        assertWritesAsCodec(String[].class, new String[]{"a", null, "á"});
+        assertWritesAsCodec(Bean[].class, new Bean[]{createBean(), null, new Bean()});
+        assertWritesAsCodec(Boolean[].class, new Boolean[]{true, null, false});
+    }
+
+    @Test
+    public void testWriteNulls() throws Exception {
+        assertWritesAsCodec(Bean.class, null);
+        assertWritesAsCodec(String.class, null);
+        assertWritesAsCodec(Integer.class, null);
+        assertWritesAsCodec(int[].class, null);
+    }
+
+    @Test
+    public void testToNode() throws Exception {
+        JsonCodec codec = JsonCodec.getInstance();
+        Object[] values = {createBean(), new Bean(), new Bean[]{createBean(), null}, new int[]{1, 2}, new float[]{0.1f}, "a\"b", null};
+        for (int i = 0; i < values.length; i++) {
+            Class type = values[i] == null ? String.class : values[i].getClass();
+            TypeBinding binding = TypeBinding.create(type);
+            JsonNode node = binding.toNode(values[i]);
+            assertEquals(binding.write(values[i]), node.toString());
+            assertEquals(CanonicalHash.hashHex(codec.parse(codec.transform(values[i]))), CanonicalHash.hashHex(node));
+        }
+    }
+
+    @Test
+    public void testReadBean() throws Exception {
+        assertReadsAsCodec(Bean.class, "{\"name\":\"n\",\"count\":1,\"ratio\":1.5,\"enabled\":false,\"total\":-9,\"tags\":[\"a\"],\"children\":[{\"name\":\"c\"},null]}");
+        assertReadsAsCodec(Bean.class, "{}");
+        assertReadsAsCodec(Bean.class, "{\"name\":null,\"tags\":null}");
+        assertReadsAsCodec(Bean.class, "null");
+    }
+
+    @Test
+    public void testReadArrays() throws Exception {
+        assertReadsAsCodec(int[].class, "[1,2,3]");
+        assertReadsAsCodec(String[].class, "[\"a\",null]");
+        assertReadsAsCodec(Bean[].class, "[{\"count\":2},null]");
+    }
+
+    @Test
+    public void testUnsupportedValues() throws Exception {
+        TypeBinding binding = TypeBinding.create(Bean.class);
+        try {
+            // unknown property
+            binding.read(JsonCodec.getInstance().parse("{\"unknown\":1}"));
+            fail();
+        } catch (UnsupportedBindingException ex) {
+        }
+        try {
+            // null for a primitive
+            binding.read(JsonCodec.getInstance().parse("{\"count\":null}"));
+            fail();
+        } catch (UnsupportedBindingException ex) {
+        }
+        try {
+            // subclass of the declared type
+            binding.write(new Bean() {
+            });
+            fail();
+        } catch (UnsupportedBindingException ex) {
+        }
+    }
+
+    @Test
+    public void testAccessorExceptionsArePropagated() throws Exception {
+        TypeBinding binding = TypeBinding.create(FailingBean.class);
+        assertNotNull(binding);
+        FailingBean bean = new FailingBean();
+        try {
+            binding.write(bean);
+            fail();
+        } catch (IllegalStateException ex) {
+            assertEquals("get", ex.getMessage());
+        }
+        assertEquals(1, bean.getterCalls);
+        try {
+            binding.read(JsonCodec.getInstance().parse("{\"value\":\"x\"}"));
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertEquals("set", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testEnumsAreLeftToTheCodec() throws Exception {
+        assertNull(TypeBinding.create(Color.class));
+        assertNull(TypeBinding.create(Color[].class));
+        assertNull(TypeBinding.create(EnumBean.class));
+    }
+
+    public enum Color {
+
+        RED, GREEN
+    }
+
+    public static class EnumBean {
+
+        private Color color;
+
+        public Color getColor() {
+            return color;
+        }
+
+        public void setColor(Color color) {
+            this.color = color;
+        }
+    }
+
+    public static class FailingBean {
+
+        private int getterCalls;
+        private String value;
+
+        public String getValue() {
+            getterCalls++;
+            throw new IllegalStateException("get");
+        }
+
+        public void setValue(String value) {
+            throw new IllegalArgumentException("set");
+        }
+    }
+
+    public static class Bean {
+
+        private String name;
+        private int count;
+        private Double ratio;
+        private boolean enabled;
+        private long total;
+        private String[] tags;
+        private List<Bean> children;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public Double getRatio() {
+            return ratio;
+        }
+
+        public void setRatio(Double ratio) {
+            this.ratio = ratio;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        public String[] getTags() {
+            return tags;
+        }
+
+        public void setTags(String[] tags) {
+            this.tags = tags;
+        }
+
+        public List<Bean> getChildren() {
+            return children;
+        }
+
+        public void setChildren(List<Bean> children) {
+            this.children = children;
+        }
+    }
+}
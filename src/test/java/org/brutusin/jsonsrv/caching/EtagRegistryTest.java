@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
+import org.brutusin.jsonsrv.JsonService;
+import org.brutusin.jsonsrv.SafeAction;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class EtagRegistryTest {
+
+    @Test
+    public void testPutAndGet() {
+        EtagRegistry registry = new EtagRegistry(100);
+        ConditionalCachingInfo cachingInfo = new ConditionalCachingInfo("v1", 60000);
+        registry.put("s\nk", cachingInfo);
+        assertSame(cachingInfo, registry.get("s\nk"));
+        assertNull(registry.get("s\nother"));
+        assertEquals(1, registry.getSize());
+    }
+
+    @Test
+    public void testOnlyEntriesWithTtlAreRegistered() {
+        EtagRegistry registry = new EtagRegistry(100);
+        registry.put("s\nk", new ConditionalCachingInfo("v1"));
+        assertNull(registry.get("s\nk"));
+        assertEquals(0, registry.getSize());
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        EtagRegistry registry = new EtagRegistry(100);
+        registry.put("s\nk", new ConditionalCachingInfo("v1", 20));
+        assertNotNull(registry.get("s\nk"));
+        Thread.sleep(40);
+        assertNull(registry.get("s\nk"));
+        assertEquals(0, registry.getSize());
+    }
+
+    @Test
+    public void testAliases() {
+        EtagRegistry registry = new EtagRegistry(100);
+        ConditionalCachingInfo v1 = new ConditionalCachingInfo("v1", 60000);
+        registry.put("s\nk", v1);
+        registry.putAlias("raw", "s\nk");
+        assertSame(v1, registry.get("raw"));
+        // Aliases resolve to the current entry of their target
+        ConditionalCachingInfo v2 = new ConditionalCachingInfo("v2", 60000);
+        registry.put("s\nk", v2);
+        assertSame(v2, registry.get("raw"));
+        registry.invalidate("s");
+        assertNull(registry.get("raw"));
+        // Aliases of aliases are not followed
+        registry.put("s\nk", v2);
+        registry.putAlias("raw2", "raw");
+        assertNull(registry.get("raw2"));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        EtagRegistry registry = new EtagRegistry(100);
+        ConditionalCachingInfo cachingInfo = new ConditionalCachingInfo("v1", 60000);
+        String key1 = EtagRegistry.getKey("s1", JsonCodec.getInstance().parse("{\"a\":1}"));
+        String key2 = EtagRegistry.getKey("s1", JsonCodec.getInstance().parse("{\"a\":2}"));
+        String key3 = EtagRegistry.getKey("s2", JsonCodec.getInstance().parse("{\"a\":1}"));
+        registry.put(key1, cachingInfo);
+        registry.put(key2, cachingInfo);
+        registry.put(key3, cachingInfo);
+        registry.invalidate("s1", JsonCodec.getInstance().parse("{\"a\":1}"));
+        assertNull(registry.get(key1));
+        assertNotNull(registry.get(key2));
+        registry.invalidate("s1");
+        assertNull(registry.get(key2));
+        assertNotNull(registry.get(key3));
+        registry.invalidateAll();
+        assertEquals(0, registry.getSize());
+    }
+
+    @Test
+    public void testInvalidationOfStoredRequest() throws Exception {
+        EtagRegistry registry = new EtagRegistry(100);
+        JsonService service = new JsonService("item", new ItemAction(), null);
+        // Keyed as the framework does: by the tree of the bound input, where members ignored by the binding are absent and defaulted ones present
+        JsonNode inputNode = JsonCodec.getInstance().parse(" {\"name\" : \"x\", \"unknown\" : true} ");
+        Object input = service.loadInput(inputNode);
+        String key = EtagRegistry.getKey(service.getId(), service.getKeyNode(input, inputNode));
+        assertFalse(key.equals(EtagRegistry.getKey(service.getId(), inputNode)));
+        registry.put(key, new ConditionalCachingInfo("v1", 60000));
+        Item item = new Item();
+        item.setName("x");
+        assertEquals(key, EtagRegistry.getKey("item", item));
+        registry.invalidate("item", item);
+        assertNull(registry.get(key));
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        EtagRegistry registry = new EtagRegistry(32);
+        ConditionalCachingInfo cachingInfo = new ConditionalCachingInfo("v1", 60000);
+        for (int i = 0; i < 1000; i++) {
+            registry.put("s\n" + i, cachingInfo);
+        }
+        assertTrue(registry.getSize() <= 32);
+        // The most recently used entry is kept
+        assertNotNull(registry.get("s\n999"));
+    }
+
+    public static class ItemAction extends SafeAction<Item, String> {
+
+        @Override
+        public String execute(Item input) throws Exception {
+            return input.getName();
+        }
+    }
+
+    public static class Item {
+
+        private int id;
+        private String name;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
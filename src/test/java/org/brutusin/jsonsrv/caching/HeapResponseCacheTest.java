@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class HeapResponseCacheTest {
+
+    private static final CachingInfo ONE_MINUTE = new ExpiringCachingInfo(60);
+
+    @Test
+    public void testExpiringEntry() {
+        HeapResponseCache cache = new HeapResponseCache(10, 1024);
+        byte[] body = "{\"value\":1}".getBytes();
+        cache.put("s\n1", ONE_MINUTE, body);
+        assertSame(body, cache.get("s\n1", ONE_MINUTE));
+        assertEquals(1, cache.getHits());
+        // served to requests whose caching info is expiring, not conditional
+        assertNull(cache.get("s\n1", new ConditionalCachingInfo("e")));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiredEntry() {
+        HeapResponseCache cache = new HeapResponseCache(10, 1024);
+        cache.put("s\n1", new ExpiringCachingInfo(0), "{}".getBytes());
+        assertNull(cache.get("s\n1", ONE_MINUTE));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getByteSize());
+    }
+
+    @Test
+    public void testConditionalEntry() {
+        HeapResponseCache cache = new HeapResponseCache(10, 1024);
+        byte[] body = "{}".getBytes();
+        cache.put("s\n1", new ConditionalCachingInfo("v1"), body);
+        assertSame(body, cache.get("s\n1", new ConditionalCachingInfo("v1")));
+        assertNull(cache.get("s\n1", new ConditionalCachingInfo("v2")));
+        // invalid entries are discarded
+        assertNull(cache.get("s\n1", new ConditionalCachingInfo("v1")));
+    }
+
+    @Test
+    public void testNotStorable() {
+        HeapResponseCache cache = new HeapResponseCache(10, 1024);
+        cache.put("s\n1", new ConditionalCachingInfo(null), "{}".getBytes());
+        cache.put("s\n2", ONE_MINUTE, new byte[2048]);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEntryEviction() {
+        HeapResponseCache cache = new HeapResponseCache(2, 1024);
+        cache.put("s\n1", ONE_MINUTE, "1".getBytes());
+        cache.put("s\n2", ONE_MINUTE, "2".getBytes());
+        // 1 becomes the most recently used
+        assertNotNull(cache.get("s\n1", ONE_MINUTE));
+        cache.put("s\n3", ONE_MINUTE, "3".getBytes());
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("s\n2", ONE_MINUTE));
+        assertNotNull(cache.get("s\n1", ONE_MINUTE));
+        assertNotNull(cache.get("s\n3", ONE_MINUTE));
+    }
+
+    @Test
+    public void testByteEviction() {
+        HeapResponseCache cache = new HeapResponseCache(10, 100);
+        cache.put("s\n1", ONE_MINUTE, new byte[60]);
+        cache.put("s\n2", ONE_MINUTE, new byte[60]);
+        assertEquals(1, cache.getSize());
+        assertEquals(60, cache.getByteSize());
+        assertNull(cache.get("s\n1", ONE_MINUTE));
+        assertNotNull(cache.get("s\n2", ONE_MINUTE));
+    }
+
+    @Test
+    public void testEncodedVariants() {
+        HeapResponseCache cache = new HeapResponseCache(10, 1024);
+        byte[] body = "{}".getBytes();
+        byte[] gzipped = new byte[]{1, 2, 3};
+        cache.put("s\n1", ONE_MINUTE, body);
+        cache.putEncoded("s\n1", body, "gzip", gzipped);
+        assertSame(gzipped, cache.getEncoded("s\n1", body, "gzip"));
+        assertNull(cache.getEncoded("s\n1", body, "deflate"));
+        assertEquals(body.length + gzipped.length, cache.getByteSize());
+        // variants are bound to the body they were computed from
+        cache.put("s\n1", ONE_MINUTE, "{ }".getBytes());
+        assertNull(cache.getEncoded("s\n1", body, "gzip"));
+    }
+
+    @Test
+    public void testRemoveAll() {
+        HeapResponseCache cache = new HeapResponseCache(10, 1024);
+        cache.put("a\n1", ONE_MINUTE, "1".getBytes());
+        cache.put("a\n2", ONE_MINUTE, "2".getBytes());
+        cache.put("ab\n1", ONE_MINUTE, "3".getBytes());
+        assertEquals(2, cache.removeAll("a\n"));
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getByteSize());
+    }
+}
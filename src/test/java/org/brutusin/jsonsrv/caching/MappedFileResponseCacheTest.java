@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+import java.io.File;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class MappedFileResponseCacheTest {
+
+    private static final CachingInfo ONE_MINUTE = new ExpiringCachingInfo(60);
+
+    private File file;
+    private MappedFileResponseCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jsonsrv-cache", ".dat");
+        cache = new MappedFileResponseCache(file, 10, 16 * 1024);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+        file.delete();
+    }
+
+    @Test
+    public void testExpiringEntry() {
+        byte[] body = "{\"value\":1}".getBytes();
+        cache.put("s\n1", ONE_MINUTE, body);
+        assertArrayEquals(body, cache.get("s\n1", ONE_MINUTE));
+        assertEquals(1, cache.getHits());
+        assertNull(cache.get("s\n1", new ConditionalCachingInfo("e")));
+        assertNull(cache.get("s\n2", ONE_MINUTE));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiredEntry() {
+        cache.put("s\n1", new ExpiringCachingInfo(0), "{}".getBytes());
+        assertNull(cache.get("s\n1", ONE_MINUTE));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testConditionalEntry() {
+        byte[] body = "{}".getBytes();
+        cache.put("s\n1", new ConditionalCachingInfo("v1"), body);
+        assertArrayEquals(body, cache.get("s\n1", new ConditionalCachingInfo("v1")));
+        assertNull(cache.get("s\n1", new ConditionalCachingInfo("v2")));
+        assertNull(cache.get("s\n1", new ConditionalCachingInfo("v1")));
+    }
+
+    @Test
+    public void testNotStorable() {
+        cache.put("s\n1", new ConditionalCachingInfo(null), "{}".getBytes());
+        cache.put("s\n2", ONE_MINUTE, new byte[17 * 1024]);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testReplacement() {
+        cache.put("s\n1", ONE_MINUTE, "1".getBytes());
+        cache.put("s\n1", ONE_MINUTE, "2".getBytes());
+        assertEquals(1, cache.getSize());
+        assertArrayEquals("2".getBytes(), cache.get("s\n1", ONE_MINUTE));
+    }
+
+    @Test
+    public void testLogEviction() throws Exception {
+        cache.close();
+        cache = new MappedFileResponseCache(file, 100, 1000);
+        for (int i = 0; i < 20; i++) {
+            cache.put("s\n" + i, ONE_MINUTE, new byte[100]);
+        }
+        // the oldest records are overwritten by the circular log
+        assertNull(cache.get("s\n0", ONE_MINUTE));
+        assertNotNull(cache.get("s\n19", ONE_MINUTE));
+        assertTrue(cache.getSize() < 10);
+        assertTrue(cache.getEvictions() > 0);
+    }
+
+    @Test
+    public void testSurvivesReopening() throws Exception {
+        byte[] body = "{\"value\":1}".getBytes();
+        cache.put("s\n1", ONE_MINUTE, body);
+        cache.close();
+        cache = new MappedFileResponseCache(file, 10, 16 * 1024);
+        assertArrayEquals(body, cache.get("s\n1", ONE_MINUTE));
+        // a different layout reinitializes the file
+        cache.close();
+        cache = new MappedFileResponseCache(file, 1000, 16 * 1024);
+        assertNull(cache.get("s\n1", ONE_MINUTE));
+    }
+
+    @Test
+    public void testEncodedVariants() {
+        byte[] body = "{}".getBytes();
+        byte[] gzipped = new byte[]{1, 2, 3};
+        cache.put("s\n1", ONE_MINUTE, body);
+        cache.putEncoded("s\n1", body, "gzip", gzipped);
+        assertArrayEquals(gzipped, cache.getEncoded("s\n1", body, "gzip"));
+        assertNull(cache.getEncoded("s\n1", body, "deflate"));
+        // variants are bound to the body they were computed from
+        assertNull(cache.getEncoded("s\n1", "{ }".getBytes(), "gzip"));
+    }
+
+    @Test
+    public void testRemoveAll() {
+        cache.put("a\n1", ONE_MINUTE, "1".getBytes());
+        cache.put("a\n2", ONE_MINUTE, "2".getBytes());
+        cache.put("ab\n1", ONE_MINUTE, "3".getBytes());
+        assertEquals(2, cache.removeAll("a\n"));
+        assertEquals(1, cache.getSize());
+        assertNotNull(cache.get("ab\n1", ONE_MINUTE));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.caching;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class OffHeapResponseCacheTest {
+
+    private static final CachingInfo ONE_MINUTE = new ExpiringCachingInfo(60);
+
+    @Test
+    public void testExpiringEntry() {
+        OffHeapResponseCache cache = new OffHeapResponseCache(10, 16 * 1024);
+        byte[] body = "{\"value\":1}".getBytes();
+        cache.put("s\n1", ONE_MINUTE, body);
+        assertArrayEquals(body, cache.get("s\n1", ONE_MINUTE));
+        assertEquals(1, cache.getHits());
+        assertNull(cache.get("s\n1", new ConditionalCachingInfo("e")));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiredEntry() {
+        OffHeapResponseCache cache = new OffHeapResponseCache(10, 16 * 1024);
+        cache.put("s\n1", new ExpiringCachingInfo(0), "{}".getBytes());
+        assertNull(cache.get("s\n1", ONE_MINUTE));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getByteSize());
+    }
+
+    @Test
+    public void testConditionalEntry() {
+        OffHeapResponseCache cache = new OffHeapResponseCache(10, 16 * 1024);
+        byte[] body = "{}".getBytes();
+        cache.put("s\n1", new ConditionalCachingInfo("v1"), body);
+        assertArrayEquals(body, cache.get("s\n1", new ConditionalCachingInfo("v1")));
+        assertNull(cache.get("s\n1", new ConditionalCachingInfo("v2")));
+        assertNull(cache.get("s\n1", new ConditionalCachingInfo("v1")));
+    }
+
+    @Test
+    public void testNotStorable() {
+        // slabs of 100 bytes
+        OffHeapResponseCache cache = new OffHeapResponseCache(10, 1600);
+        cache.put("s\n1", new ConditionalCachingInfo(null), "{}".getBytes());
+        cache.put("s\n2", ONE_MINUTE, new byte[101]);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEntryEviction() {
+        OffHeapResponseCache cache = new OffHeapResponseCache(2, 16 * 1024);
+        cache.put("s\n1", ONE_MINUTE, "1".getBytes());
+        cache.put("s\n2", ONE_MINUTE, "2".getBytes());
+        cache.put("s\n3", ONE_MINUTE, "3".getBytes());
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        // FIFO
+        assertNull(cache.get("s\n1", ONE_MINUTE));
+        assertNotNull(cache.get("s\n2", ONE_MINUTE));
+        assertNotNull(cache.get("s\n3", ONE_MINUTE));
+    }
+
+    @Test
+    public void testSlabEviction() {
+        // 16 slabs of 10 bytes, one body per slab
+        OffHeapResponseCache cache = new OffHeapResponseCache(100, 160);
+        for (int i = 0; i < 16; i++) {
+            cache.put("s\n" + i, ONE_MINUTE, new byte[6]);
+        }
+        assertEquals(16, cache.getSize());
+        assertEquals(96, cache.getByteSize());
+        // wraps around, recycling the first slab
+        cache.put("s\n16", ONE_MINUTE, new byte[6]);
+        assertEquals(16, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("s\n0", ONE_MINUTE));
+        assertNotNull(cache.get("s\n1", ONE_MINUTE));
+        assertNotNull(cache.get("s\n16", ONE_MINUTE));
+    }
+
+    @Test
+    public void testEncodedVariants() {
+        OffHeapResponseCache cache = new OffHeapResponseCache(10, 16 * 1024);
+        byte[] body = "{}".getBytes();
+        byte[] gzipped = new byte[]{1, 2, 3};
+        cache.put("s\n1", ONE_MINUTE, body);
+        cache.putEncoded("s\n1", body, "gzip", gzipped);
+        assertArrayEquals(gzipped, cache.getEncoded("s\n1", body, "gzip"));
+        assertNull(cache.getEncoded("s\n1", body, "deflate"));
+        assertEquals(body.length + gzipped.length, cache.getByteSize());
+        // variants are bound to the body they were computed from
+        cache.put("s\n1", ONE_MINUTE, "{ }".getBytes());
+        assertNull(cache.getEncoded("s\n1", body, "gzip"));
+    }
+
+    @Test
+    public void testRemoveAll() {
+        OffHeapResponseCache cache = new OffHeapResponseCache(10, 16 * 1024);
+        cache.put("a\n1", ONE_MINUTE, "1".getBytes());
+        cache.put("a\n2", ONE_MINUTE, "2".getBytes());
+        cache.put("ab\n1", ONE_MINUTE, "3".getBytes());
+        assertEquals(2, cache.removeAll("a\n"));
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getByteSize());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.codec;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jsonSchema.factories.SchemaFactoryWrapper;
+import com.github.fge.jsonschema.cfg.ValidationConfiguration;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import com.github.fge.jsonschema.SchemaVersion;
+import java.io.IOException;
+import org.brutusin.commons.json.ParseException;
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
+import org.brutusin.commons.json.spi.JsonSchema;
+
+/**
+ * Jackson based JSON SPI provider used by the tests. Schemas are generated
+ * by the Jackson JSON schema module and validated by the fge
+ * json-schema-validator (draft 3 by default).
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class JacksonCodec extends JsonCodec {
+
+    private final ObjectMapper mapper;
+    private final JsonSchemaFactory schemaFactory;
+
+    public JacksonCodec() {
+        this.mapper = new ObjectMapper();
+        this.mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.schemaFactory = JsonSchemaFactory.newBuilder().setValidationConfiguration(ValidationConfiguration.newBuilder().setDefaultVersion(SchemaVersion.DRAFTV3).freeze()).freeze();
+    }
+
+    static com.fasterxml.jackson.databind.JsonNode toJackson(JsonNode node) throws IOException {
+        if (node instanceof JacksonNode) {
+            return ((JacksonNode) node).getNode();
+        }
+        return new ObjectMapper().readTree(node.toString());
+    }
+
+    @Override
+    public String quoteAsUTF8(String s) {
+        return new String(JsonStringEncoder.getInstance().quoteAsString(s));
+    }
+
+    @Override
+    public <T> T parse(String json, Class<T> clazz) throws ParseException {
+        try {
+            return mapper.readValue(json, clazz);
+        } catch (IOException ex) {
+            throw new ParseException(ex);
+        }
+    }
+
+    @Override
+    public JsonNode parse(String json) throws ParseException {
+        try {
+            return JacksonNode.valueOf(mapper.readTree(json));
+        } catch (IOException ex) {
+            throw new ParseException(ex);
+        }
+    }
+
+    @Override
+    public String transform(Object o) {
+        try {
+            return mapper.writeValueAsString(o);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public String prettyPrint(String json) throws ParseException {
+        try {
+            return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(mapper.readTree(json));
+        } catch (IOException ex) {
+            throw new ParseException(ex);
+        }
+    }
+
+    @Override
+    public String getSchemaString(Class clazz) {
+        try {
+            SchemaFactoryWrapper visitor = new SchemaFactoryWrapper();
+            mapper.acceptJsonFormatVisitor(clazz, visitor);
+            return mapper.writeValueAsString(visitor.finalSchema());
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public JsonSchema parseSchema(String schema) throws ParseException {
+        try {
+            return new JacksonSchema(mapper.readTree(schema), schemaFactory);
+        } catch (IOException ex) {
+            throw new ParseException(ex);
+        }
+    }
+}
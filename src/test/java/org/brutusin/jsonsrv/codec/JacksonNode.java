@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.codec;
+
+import java.util.Iterator;
+import org.brutusin.commons.json.spi.JsonNode;
+
+/**
+ * {@link JsonNode} backed by a Jackson tree node.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class JacksonNode implements JsonNode {
+
+    private final com.fasterxml.jackson.databind.JsonNode node;
+
+    public JacksonNode(com.fasterxml.jackson.databind.JsonNode node) {
+        this.node = node;
+    }
+
+    public com.fasterxml.jackson.databind.JsonNode getNode() {
+        return node;
+    }
+
+    static JsonNode valueOf(com.fasterxml.jackson.databind.JsonNode node) {
+        return node == null ? null : new JacksonNode(node);
+    }
+
+    @Override
+    public Type getNodeType() {
+        if (node.isObject()) {
+            return Type.OBJECT;
+        } else if (node.isArray()) {
+            return Type.ARRAY;
+        } else if (node.isBoolean()) {
+            return Type.BOOLEAN;
+        } else if (node.isIntegralNumber()) {
+            return Type.INTEGER;
+        } else if (node.isNumber()) {
+            return Type.NUMBER;
+        } else if (node.isTextual()) {
+            return Type.STRING;
+        } else {
+            return Type.NULL;
+        }
+    }
+
+    @Override
+    public Boolean asBoolean() {
+        return node.isBoolean() ? node.booleanValue() : null;
+    }
+
+    @Override
+    public Integer asInteger() {
+        return node.isNumber() ? node.intValue() : null;
+    }
+
+    @Override
+    public Long asLong() {
+        return node.isNumber() ? node.longValue() : null;
+    }
+
+    @Override
+    public Double asDouble() {
+        return node.isNumber() ? node.doubleValue() : null;
+    }
+
+    @Override
+    public String asString() {
+        return node.isTextual() ? node.textValue() : null;
+    }
+
+    @Override
+    public int getSize() {
+        return node.size();
+    }
+
+    @Override
+    public JsonNode get(int i) {
+        return node.isArray() ? valueOf(node.get(i)) : null;
+    }
+
+    @Override
+    public Iterator<String> getProperties() {
+        return node.fieldNames();
+    }
+
+    @Override
+    public JsonNode get(String property) {
+        return node.isObject() ? valueOf(node.get(property)) : null;
+    }
+
+    @Override
+    public String toString() {
+        return node.toString();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.codec;
+
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.brutusin.commons.json.ValidationException;
+import org.brutusin.commons.json.spi.JsonNode;
+import org.brutusin.commons.json.spi.JsonSchema;
+
+/**
+ * {@link JsonSchema} validated by the fge json-schema-validator.
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class JacksonSchema extends JacksonNode implements JsonSchema {
+
+    private final JsonSchemaFactory factory;
+    private com.github.fge.jsonschema.main.JsonSchema validator;
+
+    public JacksonSchema(com.fasterxml.jackson.databind.JsonNode node, JsonSchemaFactory factory) {
+        super(node);
+        this.factory = factory;
+    }
+
+    private synchronized com.github.fge.jsonschema.main.JsonSchema getValidator() throws ProcessingException {
+        if (validator == null) {
+            validator = factory.getJsonSchema(getNode());
+        }
+        return validator;
+    }
+
+    @Override
+    public void validate(JsonNode node) throws ValidationException {
+        List<String> messages = new ArrayList<String>();
+        try {
+            ProcessingReport report = getValidator().validate(JacksonCodec.toJackson(node));
+            if (report.isSuccess()) {
+                return;
+            }
+            Iterator<ProcessingMessage> it = report.iterator();
+            while (it.hasNext()) {
+                messages.add(it.next().getMessage());
+            }
+        } catch (ProcessingException ex) {
+            messages.add(ex.getMessage());
+        } catch (IOException ex) {
+            messages.add(ex.getMessage());
+        }
+        throw new ValidationException(messages);
+    }
+
+    @Override
+    public Type getSchemaType() {
+        com.fasterxml.jackson.databind.JsonNode type = getNode().get("type");
+        if (type == null || !type.isTextual()) {
+            return Type.ANY;
+        }
+        String str = type.textValue();
+        if (str.equals("any")) {
+            return Type.ANY;
+        }
+        return Type.valueOf(str.toUpperCase());
+    }
+
+    @Override
+    public JsonSchema getPropertySchema(String property) {
+        com.fasterxml.jackson.databind.JsonNode properties = getNode().get("properties");
+        return properties == null ? null : schemaOf(properties.get(property));
+    }
+
+    @Override
+    public JsonSchema getItemSchema() {
+        return schemaOf(getNode().get("items"));
+    }
+
+    @Override
+    public JsonSchema getAdditionalPropertySchema() {
+        com.fasterxml.jackson.databind.JsonNode additionalProperties = getNode().get("additionalProperties");
+        return additionalProperties == null || !additionalProperties.isObject() ? null : schemaOf(additionalProperties);
+    }
+
+    private JsonSchema schemaOf(com.fasterxml.jackson.databind.JsonNode node) {
+        return node == null ? null : new JacksonSchema(node, factory);
+    }
+}
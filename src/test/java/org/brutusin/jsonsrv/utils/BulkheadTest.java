@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class BulkheadTest {
+
+    private static final long FAST = 1000000;
+    private static final long SLOW = 10 * FAST;
+
+    private static void acquire(Bulkhead bulkhead, int permits) throws InterruptedException {
+        for (int i = 0; i < permits; i++) {
+            assertTrue(bulkhead.acquire());
+        }
+    }
+
+    @Test
+    public void testFixedLimit() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(3, 0, 0, false);
+        acquire(bulkhead, 3);
+        assertFalse(bulkhead.acquire());
+        assertEquals(1, bulkhead.getRejections());
+        bulkhead.release(FAST);
+        bulkhead.release(SLOW);
+        bulkhead.release(SLOW);
+        assertEquals(3, bulkhead.getLimit());
+        assertEquals(0, bulkhead.getInFlight());
+    }
+
+    @Test
+    public void testMultiplicativeDecreaseOnSlowExecutions() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(10, 0, 0, true);
+        acquire(bulkhead, 10);
+        bulkhead.release(FAST);
+        assertEquals(10, bulkhead.getLimit());
+        bulkhead.release(SLOW);
+        assertEquals(9, bulkhead.getLimit());
+        // The rest of the executions of the window reflect the same overload
+        for (int i = 0; i < 8; i++) {
+            bulkhead.release(SLOW);
+        }
+        assertEquals(9, bulkhead.getLimit());
+        assertEquals(0, bulkhead.getInFlight());
+        acquire(bulkhead, 2);
+        bulkhead.release(SLOW);
+        assertEquals(9, bulkhead.getLimit());
+        // 10 executions (the limit when decreased) finished since then
+        bulkhead.release(SLOW);
+        assertEquals(8, bulkhead.getLimit());
+    }
+
+    @Test
+    public void testOneDecreasePerWindowOnRejections() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(10, 0, 0, true);
+        acquire(bulkhead, 10);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(bulkhead.acquire());
+        }
+        assertEquals(9, bulkhead.getLimit());
+        assertEquals(5, bulkhead.getRejections());
+        for (int i = 0; i < 10; i++) {
+            bulkhead.release(FAST);
+        }
+        acquire(bulkhead, 10);
+        assertFalse(bulkhead.acquire());
+        assertEquals(9, bulkhead.getLimit());
+    }
+
+    @Test
+    public void testAdditiveIncreaseWhenNotSlowedDown() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(10, 0, 0, true);
+        acquire(bulkhead, 10);
+        bulkhead.release(FAST);
+        bulkhead.release(SLOW);
+        assertEquals(9, bulkhead.getLimit());
+        assertEquals(8, bulkhead.getInFlight());
+        // Limit nearly in use (8 in flight out of 9)
+        bulkhead.release(FAST);
+        assertEquals(10, bulkhead.getLimit());
+        // Never above the configured maximum
+        bulkhead.release(FAST);
+        assertEquals(10, bulkhead.getLimit());
+    }
+
+    @Test
+    public void testNoIncreaseWhenLimitNotInUse() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(10, 0, 0, true);
+        acquire(bulkhead, 10);
+        for (int i = 0; i < 8; i++) {
+            bulkhead.release(FAST);
+        }
+        bulkhead.release(SLOW);
+        assertEquals(9, bulkhead.getLimit());
+        assertEquals(1, bulkhead.getInFlight());
+        // 1 in flight out of 9
+        bulkhead.release(FAST);
+        assertEquals(9, bulkhead.getLimit());
+    }
+
+    @Test
+    public void testToleratesTwiceTheMinimumLatency() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(10, 0, 0, true);
+        acquire(bulkhead, 10);
+        bulkhead.release(FAST);
+        bulkhead.release(2 * FAST);
+        assertEquals(10, bulkhead.getLimit());
+        bulkhead.release(2 * FAST + 1);
+        assertEquals(9, bulkhead.getLimit());
+    }
+
+    @Test
+    public void testRejectionDecreasesAdaptiveLimit() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(10, 0, 0, true);
+        acquire(bulkhead, 10);
+        assertFalse(bulkhead.acquire());
+        assertEquals(9, bulkhead.getLimit());
+        assertEquals(1, bulkhead.getRejections());
+    }
+
+    @Test
+    public void testLimitNeverBelowOne() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(2, 0, 0, true);
+        acquire(bulkhead, 2);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(bulkhead.acquire());
+        }
+        assertEquals(1, bulkhead.getLimit());
+        bulkhead.release(FAST);
+        bulkhead.release(SLOW);
+        assertEquals(1, bulkhead.getLimit());
+        assertTrue(bulkhead.acquire());
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(1, 1, 50, false);
+        acquire(bulkhead, 1);
+        long start = System.nanoTime();
+        assertFalse(bulkhead.acquire());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(0, bulkhead.getQueued());
+        assertEquals(1, bulkhead.getRejections());
+    }
+
+    @Test
+    public void testQueuedExecutionGetsReleasedPermit() throws Exception {
+        final Bulkhead bulkhead = new Bulkhead(1, 1, 10000, false);
+        acquire(bulkhead, 1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> queued = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return bulkhead.acquire();
+                }
+            });
+            while (bulkhead.getQueued() == 0) {
+                Thread.sleep(1);
+            }
+            // Queue full
+            assertFalse(bulkhead.acquire());
+            bulkhead.release(FAST);
+            assertTrue(queued.get(10, TimeUnit.SECONDS));
+            assertEquals(1, bulkhead.getInFlight());
+            assertEquals(0, bulkhead.getQueued());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
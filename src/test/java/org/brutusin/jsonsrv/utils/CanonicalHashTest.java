@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.util.Iterator;
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class CanonicalHashTest {
+
+    private static String hash(String json) throws Exception {
+        return CanonicalHash.hashHex(JsonCodec.getInstance().parse(json));
+    }
+
+    @Test
+    public void testEqualJsonGetsEqualHash() throws Exception {
+        assertEquals(hash("{\"a\":1,\"b\":[true,\"x\"]}"), hash(" { \"b\" : [ true , \"x\" ] , \"a\" : 1 } "));
+        assertEquals(hash("{\"a\":{\"c\":2,\"d\":3}}"), hash("{\"a\":{\"d\":3,\"c\":2}}"));
+        assertEquals(hash("1"), hash("1.0"));
+        assertEquals(hash("1"), hash("1e0"));
+        assertEquals(hash("[0.5]"), hash("[5E-1]"));
+        assertEquals(hash("\"\\u0041\""), hash("\"A\""));
+        // null members are the same as absent ones
+        assertEquals(hash("{\"a\":1}"), hash("{\"a\":1,\"b\":null}"));
+        assertEquals(hash("null"), CanonicalHash.hashHex(null));
+    }
+
+    @Test
+    public void testDifferentJsonGetsDifferentHash() throws Exception {
+        String[] values = {"null", "true", "false", "0", "1", "-1", "1.5", "\"\"", "\"1\"", "\"true\"", "[]", "{}", "[[]]", "[{}]", "[1,2]", "[2,1]", "[[1],2]", "[1,[2]]", "{\"a\":1}", "{\"b\":1}", "{\"a\":\"1\"}", "{\"a\":[1]}", "{\"a\":{}}", "{\"ab\":1}", "{\"a\":1,\"b\":2}", "{\"a\":2,\"b\":1}", "[null]", "[\"a\",\"b\"]", "[\"ab\"]"};
+        for (int i = 0; i < values.length; i++) {
+            for (int j = i + 1; j < values.length; j++) {
+                assertFalse(values[i] + " " + values[j], hash(values[i]).equals(hash(values[j])));
+            }
+        }
+    }
+
+    @Test
+    public void testNumbersAreNotTruncated() throws Exception {
+        // above 64 bits
+        assertFalse(hash("18446744073709551617").equals(hash("1")));
+        assertFalse(hash("9223372036854775808").equals(hash("-9223372036854775808")));
+        assertFalse(hash("[123456789012345678901234567890]").equals(hash("[123456789012345678901234567891]")));
+        // above 53 bits
+        assertFalse(hash("9007199254740993").equals(hash("9007199254740992")));
+        assertEquals(hash("100000000000000000000"), hash("1e20"));
+        assertEquals(hash("9007199254740993"), hash("9007199254740993"));
+        // beyond the double precision
+        assertFalse(CanonicalHash.hashHex(new DecimalNode("0.10000000000000000001")).equals(CanonicalHash.hashHex(new DecimalNode("0.1"))));
+        assertEquals(CanonicalHash.hashHex(new DecimalNode("0.10000000000000000001000")), CanonicalHash.hashHex(new DecimalNode("1.0000000000000000001E-1")));
+        assertEquals(hash("0.1"), CanonicalHash.hashHex(new DecimalNode("0.100")));
+        assertEquals(hash("2"), CanonicalHash.hashHex(new DecimalNode("2.000")));
+    }
+
+    @Test
+    public void testHexFormat() throws Exception {
+        String hex = hash("{\"a\":1}");
+        assertEquals(32, hex.length());
+        assertTrue(hex.matches("[0-9a-f]{32}"));
+        long[] hash = CanonicalHash.hash(JsonCodec.getInstance().parse("{\"a\":1}"));
+        assertEquals(String.format("%016x%016x", hash[0], hash[1]), hex);
+    }
+
+    /**
+     * Decimal node keeping the full precision of its text.
+     */
+    private static class DecimalNode implements JsonNode {
+
+        private final String text;
+
+        DecimalNode(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public Type getNodeType() {
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Boolean asBoolean() {
+            return null;
+        }
+
+        @Override
+        public Integer asInteger() {
+            return asDouble().intValue();
+        }
+
+        @Override
+        public Long asLong() {
+            return asDouble().longValue();
+        }
+
+        @Override
+        public Double asDouble() {
+            return Double.valueOf(text);
+        }
+
+        @Override
+        public String asString() {
+            return null;
+        }
+
+        @Override
+        public int getSize() {
+            return 0;
+        }
+
+        @Override
+        public JsonNode get(int i) {
+            return null;
+        }
+
+        @Override
+        public Iterator<String> getProperties() {
+            return null;
+        }
+
+        @Override
+        public JsonNode get(String property) {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
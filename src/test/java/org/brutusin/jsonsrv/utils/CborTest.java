@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.io.ByteArrayOutputStream;
+import org.brutusin.commons.json.ParseException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class CborTest {
+
+    private static byte[] encode(String json) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Cbor.fromJson(json.getBytes("UTF-8"), baos);
+        return baos.toByteArray();
+    }
+
+    private static String roundTrip(String json) throws Exception {
+        return Cbor.toJson(encode(json));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < bytes.length; i++) {
+            sb.append(String.format("%02x", bytes[i] & 0xff));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testScalarsRoundTrip() throws Exception {
+        String[] values = {"null", "true", "false", "0", "23", "24", "255", "256", "65536", "-1", "-24", "-25", "-4294967297", "9223372036854775807", "-9223372036854775808", "\"\"", "\"abc\""};
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], roundTrip(values[i]));
+        }
+    }
+
+    @Test
+    public void testFloatingPointRoundTrip() throws Exception {
+        String[] values = {"1.5", "-0.25", "3.141592653589793", "1.0E300", "1.5E-10"};
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Double.parseDouble(values[i]), Double.parseDouble(roundTrip(values[i])), 0);
+        }
+    }
+
+    @Test
+    public void testStructuresRoundTrip() throws Exception {
+        String[] values = {"[]", "{}", "[1,[2,[3]],{}]", "{\"a\":1,\"b\":[true,null],\"c\":{\"d\":\"e\"}}"};
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], roundTrip(values[i]));
+        }
+        assertEquals("{\"a\":[1,2]}", roundTrip(" { \"a\" : [ 1 , 2 ] } "));
+    }
+
+    @Test
+    public void testStringEscapesRoundTrip() throws Exception {
+        assertEquals("\"a\\\"b\\\\c\\nd\"", roundTrip("\"a\\\"b\\\\c\\nd\""));
+        assertEquals("\"\u00e1\u20ac\"", roundTrip("\"\\u00e1\u20ac\""));
+        assertEquals("\"\ud83d\ude00\"", roundTrip("\"\\ud83d\\ude00\""));
+    }
+
+    @Test
+    public void testRfcEncodings() throws Exception {
+        // Examples from rfc7049 appendix A
+        assertEquals("00", hex(encode("0")));
+        assertEquals("17", hex(encode("23")));
+        assertEquals("1818", hex(encode("24")));
+        assertEquals("1903e8", hex(encode("1000")));
+        assertEquals("20", hex(encode("-1")));
+        assertEquals("3863", hex(encode("-100")));
+        assertEquals("f4", hex(encode("false")));
+        assertEquals("f5", hex(encode("true")));
+        assertEquals("f6", hex(encode("null")));
+        assertEquals("6161", hex(encode("\"a\"")));
+        // Containers are streamed, so their size is indefinite
+        assertEquals("9f010203ff", hex(encode("[1,2,3]")));
+        assertEquals("bf616101ff", hex(encode("{\"a\":1}")));
+    }
+
+    @Test
+    public void testDecodesDefiniteLengthContainers() throws Exception {
+        assertEquals("[1,2,3]", Cbor.toJson(new byte[]{(byte) 0x83, 0x01, 0x02, 0x03}));
+        assertEquals("{\"a\":1}", Cbor.toJson(new byte[]{(byte) 0xa1, 0x61, 0x61, 0x01}));
+    }
+
+    @Test
+    public void testDecodesHalfAndSinglePrecision() throws Exception {
+        assertEquals(1.5, Double.parseDouble(Cbor.toJson(new byte[]{(byte) 0xf9, 0x3e, 0x00})), 0);
+        assertEquals(100000.0, Double.parseDouble(Cbor.toJson(new byte[]{(byte) 0xfa, 0x47, (byte) 0xc3, 0x50, 0x00})), 0);
+    }
+
+    @Test(expected = ParseException.class)
+    public void testInvalidJson() throws Exception {
+        encode("[1,");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testTrailingJson() throws Exception {
+        encode("1 2");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testTruncatedCbor() throws Exception {
+        Cbor.toJson(new byte[]{(byte) 0x83, 0x01});
+    }
+}
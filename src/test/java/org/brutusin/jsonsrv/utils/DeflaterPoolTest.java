@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class DeflaterPoolTest {
+
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ("{\"value\":" + i % 97 + "}").charAt(i % 11);
+        }
+        return data;
+    }
+
+    private static byte[] decode(byte[] encoded, String contentCoding) throws IOException {
+        InputStream is = new ByteArrayInputStream(encoded);
+        is = DeflaterPool.GZIP.equals(contentCoding) ? new GZIPInputStream(is) : new InflaterInputStream(is);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = is.read(buffer)) >= 0) {
+            baos.write(buffer, 0, n);
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] encodeStreaming(DeflaterPool pool, byte[] data, String contentCoding) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DeflaterPool.EncodingStream os = pool.openStream(baos, contentCoding);
+        try {
+            // uneven chunks
+            for (int off = 0; off < data.length; off += 1000) {
+                os.write(data, off, Math.min(1000, data.length - off));
+            }
+            os.close();
+        } finally {
+            os.abort();
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        DeflaterPool pool = new DeflaterPool(1, Deflater.DEFAULT_COMPRESSION);
+        byte[] data = createData(100000);
+        for (String contentCoding : new String[]{DeflaterPool.GZIP, DeflaterPool.DEFLATE}) {
+            byte[] encoded = pool.encode(data, contentCoding);
+            assertTrue(encoded.length < data.length);
+            assertTrue(Arrays.equals(data, decode(encoded, contentCoding)));
+        }
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        DeflaterPool pool = new DeflaterPool(1, Deflater.DEFAULT_COMPRESSION);
+        for (int size : new int[]{0, 1, 8 * 1024, 100000}) {
+            byte[] data = createData(size);
+            for (String contentCoding : new String[]{DeflaterPool.GZIP, DeflaterPool.DEFLATE}) {
+                assertTrue(Arrays.equals(data, decode(encodeStreaming(pool, data, contentCoding), contentCoding)));
+            }
+        }
+    }
+
+    @Test
+    public void testAbortedStreamReleasesDeflater() throws Exception {
+        DeflaterPool pool = new DeflaterPool(1, Deflater.DEFAULT_COMPRESSION);
+        byte[] data = createData(100000);
+        DeflaterPool.EncodingStream os = pool.openStream(new ByteArrayOutputStream(), DeflaterPool.GZIP);
+        os.write(data, 0, 5000);
+        os.abort();
+        try {
+            os.write(data, 0, 10);
+            fail();
+        } catch (IOException ex) {
+        }
+        // the pooled deflater is reset before being reused
+        assertTrue(Arrays.equals(data, decode(encodeStreaming(pool, data, DeflaterPool.GZIP), DeflaterPool.GZIP)));
+        assertTrue(Arrays.equals(data, decode(pool.encode(data, DeflaterPool.GZIP), DeflaterPool.GZIP)));
+    }
+}
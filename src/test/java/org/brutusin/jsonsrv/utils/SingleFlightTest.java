@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.utils;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testSequentialCallsAreNotCollapsed() throws Exception {
+        SingleFlight<String> sf = new SingleFlight<String>();
+        final AtomicInteger executions = new AtomicInteger();
+        Callable<String> callable = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "r" + executions.incrementAndGet();
+            }
+        };
+        assertEquals("r1", sf.execute("k", callable));
+        assertEquals("r2", sf.execute("k", callable));
+        assertEquals(0, sf.getCollapsed());
+    }
+
+    @Test
+    public void testConcurrentCallsShareResult() throws Exception {
+        final SingleFlight<String> sf = new SingleFlight<String>();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> leader = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return sf.execute("k", new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            executions.incrementAndGet();
+                            started.countDown();
+                            release.await();
+                            return "result";
+                        }
+                    });
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String>[] followers = new Future[3];
+            for (int i = 0; i < followers.length; i++) {
+                followers[i] = executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return sf.execute("k", new Callable<String>() {
+                            @Override
+                            public String call() throws Exception {
+                                executions.incrementAndGet();
+                                return "other";
+                            }
+                        });
+                    }
+                });
+            }
+            waitForCollapsed(sf, followers.length);
+            release.countDown();
+            assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+            for (int i = 0; i < followers.length; i++) {
+                assertEquals("result", followers[i].get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureIsPropagatedToAllCallers() throws Exception {
+        final SingleFlight<String> sf = new SingleFlight<String>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return sf.execute("k", new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            started.countDown();
+                            release.await();
+                            throw new IOException("failed");
+                        }
+                    });
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> follower = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return sf.execute("k", new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            return "other";
+                        }
+                    });
+                }
+            });
+            waitForCollapsed(sf, 1);
+            release.countDown();
+            assertFailedWith(leader, IOException.class, "failed");
+            assertFailedWith(follower, IOException.class, "failed");
+        } finally {
+            executor.shutdownNow();
+        }
+        // failures are not cached
+        assertEquals("ok", sf.execute("k", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "ok";
+            }
+        }));
+    }
+
+    @Test
+    public void testErrorIsRethrown() throws Exception {
+        SingleFlight<String> sf = new SingleFlight<String>();
+        try {
+            sf.execute("k", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new AssertionError("error");
+                }
+            });
+            fail();
+        } catch (AssertionError er) {
+            assertEquals("error", er.getMessage());
+        }
+    }
+
+    private static void waitForCollapsed(SingleFlight sf, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sf.getCollapsed() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Callers not collapsed");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void assertFailedWith(Future<?> future, Class<? extends Exception> type, String message) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertEquals(type, ex.getCause().getClass());
+            assertEquals(message, ex.getCause().getMessage());
+        }
+    }
+}
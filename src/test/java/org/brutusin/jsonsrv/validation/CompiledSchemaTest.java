@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 brutusin.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.brutusin.jsonsrv.validation;
+
+import org.brutusin.commons.json.ValidationException;
+import org.brutusin.commons.json.spi.JsonCodec;
+import org.brutusin.commons.json.spi.JsonNode;
+import org.brutusin.commons.json.spi.JsonSchema;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ignacio del Valle Alles idelvall@brutusin.org
+ */
+public class CompiledSchemaTest {
+
+    private static final String[] SCHEMAS = {
+        "{}",
+        "{\"type\":\"any\"}",
+        "{\"type\":\"string\"}",
+        "{\"type\":\"integer\"}",
+        "{\"type\":\"number\"}",
+        "{\"type\":\"boolean\"}",
+        "{\"type\":\"null\"}",
+        "{\"type\":[\"string\",\"null\"]}",
+        "{\"type\":\"string\",\"minLength\":2,\"maxLength\":3}",
+        "{\"type\":\"string\",\"pattern\":\"^[a-z]+$\"}",
+        "{\"type\":\"number\",\"minimum\":0,\"maximum\":10}",
+        "{\"type\":\"number\",\"minimum\":0,\"exclusiveMinimum\":true,\"maximum\":10,\"exclusiveMaximum\":true}",
+        "{\"type\":\"integer\",\"minimum\":-5}",
+        "{\"enum\":[\"a\",\"b\",1,true,null]}",
+        "{\"type\":\"array\",\"items\":{\"type\":\"integer\"}}",
+        "{\"type\":\"array\",\"minItems\":1,\"maxItems\":2}",
+        "{\"type\":\"object\",\"properties\":{\"a\":{\"type\":\"string\",\"required\":true},\"b\":{\"type\":\"integer\"}}}",
+        "{\"type\":\"object\",\"properties\":{\"a\":{\"type\":\"string\"}},\"additionalProperties\":false}",
+        "{\"$schema\":\"http://json-schema.org/draft-04/schema#\",\"type\":\"object\",\"properties\":{\"a\":{\"type\":\"string\"},\"b\":{\"type\":\"integer\"}},\"required\":[\"a\",\"b\"]}",
+        "{\"type\":\"object\",\"properties\":{\"list\":{\"type\":\"array\",\"items\":{\"type\":\"object\",\"properties\":{\"id\":{\"type\":\"integer\",\"required\":true}}}}}}",
+        "{\"title\":\"t\",\"description\":\"d\",\"id\":\"urn:x\",\"type\":\"boolean\"}"
+    };
+
+    private static final String[] INPUTS = {
+        "null",
+        "true",
+        "false",
+        "0",
+        "-5",
+        "-6",
+        "1",
+        "10",
+        "11",
+        "1.5",
+        "10.0",
+        "\"\"",
+        "\"a\"",
+        "\"ab\"",
+        "\"abcd\"",
+        "\"Ab\"",
+        "\"\\ud83d\\ude00\\ud83d\\ude00\"",
+        "[]",
+        "[1,2]",
+        "[1,2,3]",
+        "[1,\"a\"]",
+        "{}",
+        "{\"a\":\"x\"}",
+        "{\"a\":1}",
+        "{\"a\":\"x\",\"b\":2}",
+        "{\"a\":\"x\",\"b\":\"y\"}",
+        "{\"a\":\"x\",\"c\":true}",
+        "{\"b\":2}",
+        "{\"list\":[{\"id\":1},{\"id\":2}]}",
+        "{\"list\":[{\"id\":1},{}]}",
+        "{\"list\":[{\"id\":\"1\"}]}"
+    };
+
+    private static boolean isValid(JsonSchema schema, JsonNode node) {
+        try {
+            schema.validate(node);
+            return true;
+        } catch (ValidationException ex) {
+            return false;
+        }
+    }
+
+    @Test
+    public void testAcceptsExactlyWhatTheValidatorAccepts() throws Exception {
+        JsonCodec codec = JsonCodec.getInstance();
+        for (int i = 0; i < SCHEMAS.length; i++) {
+            CompiledSchema compiled = CompiledSchema.compile(SCHEMAS[i]);
+            assertNotNull(SCHEMAS[i], compiled);
+            JsonSchema schema = codec.parseSchema(SCHEMAS[i]);
+            for (int j = 0; j < INPUTS.length; j++) {
+                JsonNode node = codec.parse(INPUTS[j]);
+                assertEquals(SCHEMAS[i] + " " + INPUTS[j], isValid(schema, node), compiled.isValid(node));
+            }
+        }
+    }
+
+    @Test
+    public void testNeverAcceptsWhatTheValidatorRejects() throws Exception {
+        // Enum values are compared by their JSON text, so equal numbers in different notation are not proven valid
+        JsonCodec codec = JsonCodec.getInstance();
+        CompiledSchema compiled = CompiledSchema.compile("{\"enum\":[1]}");
+        JsonSchema schema = codec.parseSchema("{\"enum\":[1]}");
+        assertTrue(isValid(schema, codec.parse("1.0")));
+        assertFalse(compiled.isValid(codec.parse("1.0")));
+        assertTrue(compiled.isValid(codec.parse("1")));
+        assertFalse(isValid(schema, codec.parse("2")));
+        assertFalse(compiled.isValid(codec.parse("2")));
+    }
+
+    @Test
+    public void testUnsupportedSchemas() throws Exception {
+        assertNull(CompiledSchema.compile("{\"type\":\"object\",\"patternProperties\":{\"^a\":{}}}"));
+        assertNull(CompiledSchema.compile("{\"type\":\"object\",\"properties\":{\"a\":{\"$ref\":\"#\"}}}"));
+        assertNull(CompiledSchema.compile("{\"type\":\"array\",\"items\":[{},{}]}"));
+        assertNull(CompiledSchema.compile("{\"type\":\"object\",\"additionalProperties\":{\"type\":\"string\"}}"));
+        assertNull(CompiledSchema.compile("{\"type\":\"unknown\"}"));
+        assertNull(CompiledSchema.compile("[]"));
+    }
+
+    @Test
+    public void testSchemaOfBean() throws Exception {
+        JsonCodec codec = JsonCodec.getInstance();
+        String schemaString = codec.getSchemaString(Bean.class);
+        CompiledSchema compiled = CompiledSchema.compile(schemaString);
+        assertNotNull(schemaString, compiled);
+        JsonSchema schema = codec.parseSchema(schemaString);
+        String[] inputs = {"{}", "{\"name\":\"x\",\"count\":1,\"tags\":[\"a\"]}", "{\"count\":\"x\"}", "{\"tags\":[1]}", "[]"};
+        for (int i = 0; i < inputs.length; i++) {
+            JsonNode node = codec.parse(inputs[i]);
+            assertEquals(inputs[i], isValid(schema, node), compiled.isValid(node));
+        }
+    }
+
+    public static class Bean {
+
+        private String name;
+        private int count;
+        private String[] tags;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public String[] getTags() {
+            return tags;
+        }
+
+        public void setTags(String[] tags) {
+            this.tags = tags;
+        }
+    }
+}